@@ -0,0 +1,339 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the image that one worker thread draws its candidates into. In dirty rectangle mode a candidate starts from its parent
+ * member's image, one of the few the canvas keeps, and only the area changed by the improvement is redrawn. The canvas
+ * remembers which parent it currently holds, so that switching back costs just a copy of the last dirty area, rather than
+ * the whole image.
+ * In fused mode the changed area is drawn and scored in one pass, see {@link FusedRenderer}. When the candidate's
+ * {@link PolygonIndex} is given, only the polygons it finds in the changed area are handed to the renderer.
+ */
+public class CandidateCanvas {
+
+    /**
+     * the number of parent images each canvas keeps, which is enough for the few parents a worker switches between, without
+     * holding many full size images per worker
+     */
+    static final int PARENT_SLOTS = 4;
+
+    private final Renderer renderer;
+    private final RenderMode renderMode;
+    private final LayerCache layerCache;
+    private final CandidateScreen screen;
+    private final Dimension imageSize;
+    private final PixelLayout pixelLayout;
+    private final Rectangle dirtyArea = new Rectangle();
+    private final List<PolygonData> areaPolygons = new ArrayList<>();
+    private int[] areaIndices = new int[0];
+    private BufferedImage image;
+    private GenerationMember canvasParent;
+    private final List<WeakReference<GenerationMember>> parentMembers;
+    private final BufferedImage[] parentImages;
+    private final long[] parentLastUse;
+    private long parentUses;
+
+    /**
+     * creates a canvas for one worker thread using the renderer and render mode in the settings
+     *
+     * @param settings
+     *            the settings that describe how to render
+     * @param size
+     *            the size of the image
+     */
+    public CandidateCanvas(Settings settings, Dimension size) {
+        renderMode = settings.getRenderMode();
+        renderer = (renderMode == RenderMode.Fused) ? new FusedRenderer() : settings.getRendererType().createRenderer();
+        imageSize = size;
+        pixelLayout = settings.getPixelLayout();
+        layerCache = (renderMode == RenderMode.LayerCache) ? new LayerCache(renderer, size, pixelLayout, settings.getLayerInterval(), settings.getLayerCacheSize())
+                : null;
+        screen = ((renderMode == RenderMode.Fused) && (settings.getScreenRowStep() > 1)) ? new CandidateScreen(settings) : null;
+        image = createImage();
+
+        parentMembers = new ArrayList<>(PARENT_SLOTS);
+        for (int i = 0; i < PARENT_SLOTS; i++) {
+            parentMembers.add(null);
+        }
+        parentImages = new BufferedImage[PARENT_SLOTS];
+        parentLastUse = new long[PARENT_SLOTS];
+    }
+
+    /**
+     * returns the image holding the last rendered candidate
+     *
+     * @return the canvas image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * draws a candidate onto the canvas
+     *
+     * @param polygonData
+     *            the candidate's polygons
+     * @param polygonIndex
+     *            the spatial index of the candidate's polygons, or null to check every polygon
+     * @param parent
+     *            the member the candidate was improved from, or null if it has none
+     * @param changedArea
+     *            the area that differs from the parent, or null for a complete change
+     * @param changedIndex
+     *            the index of the lowest polygon that differs from the parent
+     */
+    public void render(List<PolygonData> polygonData, PolygonIndex polygonIndex, GenerationMember parent, Rectangle changedArea, int changedIndex) {
+        renderCandidate(polygonData, polygonIndex, parent, changedArea, changedIndex);
+    }
+
+    /**
+     * draws a candidate and scores it. In fused mode, with a fused feedback, the changed area is drawn and scored in the same
+     * pass. Otherwise the candidate is rendered and then scored by the feedback. When the candidate was drawn on top of its
+     * parent's image, only the changed area is scored.
+     *
+     * @param polygonData
+     *            the candidate's polygons
+     * @param polygonIndex
+     *            the spatial index of the candidate's polygons, or null to check every polygon
+     * @param parent
+     *            the member the candidate was improved from, or null if it has none
+     * @param changedArea
+     *            the area that differs from the parent, or null for a complete change
+     * @param changedIndex
+     *            the index of the lowest polygon that differs from the parent
+     * @param feedback
+     *            the feedback to score the candidate with
+     * @return the score of the candidate
+     */
+    public Score renderAndScore(List<PolygonData> polygonData, PolygonIndex polygonIndex, GenerationMember parent, Rectangle changedArea, int changedIndex,
+            Feedback feedback) {
+        return renderAndScore(polygonData, polygonIndex, parent, changedArea, changedIndex, feedback, Double.MAX_VALUE);
+    }
+
+    /**
+     * draws a candidate and scores it, as above, but a candidate that is sure to miss the cutoff is dropped as soon as
+     * that is known, and in fused mode with screening turned on, a candidate that the screen expects to miss the cutoff
+     * is dropped without being drawn and scored in full
+     *
+     * @param polygonData
+     *            the candidate's polygons
+     * @param polygonIndex
+     *            the spatial index of the candidate's polygons, or null to check every polygon
+     * @param parent
+     *            the member the candidate was improved from, or null if it has none
+     * @param changedArea
+     *            the area that differs from the parent, or null for a complete change
+     * @param changedIndex
+     *            the index of the lowest polygon that differs from the parent
+     * @param feedback
+     *            the feedback to score the candidate with
+     * @param cutoff
+     *            the score the candidate must beat to be kept
+     * @return the score of the candidate, or null if it was dropped, in which case the canvas image is not valid
+     */
+    public Score renderAndScore(List<PolygonData> polygonData, PolygonIndex polygonIndex, GenerationMember parent, Rectangle changedArea, int changedIndex,
+            Feedback feedback, double cutoff) {
+        if ((renderMode != RenderMode.Fused) || !(feedback instanceof FusedFeedback) || (parent == null) || (changedArea == null)) {
+            BufferedImage parentImage = renderCandidate(polygonData, polygonIndex, parent, changedArea, changedIndex);
+            if (parentImage == null) {
+                return feedback.calculateScore(image, null, (parent != null) ? parent.getScore() : null, changedArea, cutoff);
+            }
+            return feedback.calculateScore(image, parentImage, parent.getScore(), dirtyArea, cutoff);
+        }
+
+        BufferedImage parentImage = restoreParent(parent, changedArea);
+        List<PolygonData> drawnPolygons = (polygonIndex != null) ? getAreaPolygons(polygonData, polygonIndex, 0) : polygonData;
+        return ((FusedRenderer) renderer).renderAndScore(image, drawnPolygons, parentImage, parent.getScore(), dirtyArea, (FusedFeedback) feedback, screen,
+                cutoff);
+    }
+
+    /**
+     * draws a candidate onto the canvas
+     *
+     * @return the parent image, if the candidate was drawn on top of it, otherwise null
+     */
+    private BufferedImage renderCandidate(List<PolygonData> polygonData, PolygonIndex polygonIndex, GenerationMember parent, Rectangle changedArea,
+            int changedIndex) {
+        if ((renderMode == RenderMode.Full) || (parent == null) || (changedArea == null)) {
+            renderer.render(image, polygonData);
+            canvasParent = null;
+            return null;
+        }
+
+        BufferedImage parentImage = restoreParent(parent, changedArea);
+        if (dirtyArea.isEmpty()) {
+            return parentImage;
+        }
+
+        if (layerCache != null) {
+            int depth = layerCache.getLayerDepth(parent.getGenome().size(), changedIndex);
+            BufferedImage layer = layerCache.getLayer(parent, depth);
+            if (layer != null) {
+                copyArea(layer, image, dirtyArea);
+                if (polygonIndex != null) {
+                    renderer.draw(image, getAreaPolygons(polygonData, polygonIndex, depth), 0, dirtyArea);
+                } else {
+                    renderer.draw(image, polygonData, depth, dirtyArea);
+                }
+                return parentImage;
+            }
+        }
+
+        renderer.render(image, (polygonIndex != null) ? getAreaPolygons(polygonData, polygonIndex, 0) : polygonData, dirtyArea);
+        return parentImage;
+    }
+
+    /**
+     * releases the resources of the renderer
+     */
+    public void dispose() {
+        if (Polycasso.DEBUG && (layerCache != null)) {
+            System.out.println(Thread.currentThread().getName() + " " + layerCache);
+        }
+        if (Polycasso.DEBUG && (screen != null)) {
+            System.out.println(Thread.currentThread().getName() + " " + screen);
+        }
+        renderer.dispose();
+    }
+
+    /**
+     * returns the layer cache used in LayerCache render mode
+     *
+     * @return the layer cache, or null if not in that mode
+     */
+    public LayerCache getLayerCache() {
+        return layerCache;
+    }
+
+    /**
+     * returns the candidate screen used in Fused render mode
+     *
+     * @return the candidate screen, or null if screening is off
+     */
+    public CandidateScreen getScreen() {
+        return screen;
+    }
+
+    /**
+     * makes the canvas hold the parent's image, and sets the dirty area to the changed area clipped to the image
+     *
+     * @param parent
+     *            the member the candidate was improved from
+     * @param changedArea
+     *            the area that differs from the parent
+     * @return the parent's image
+     */
+    private BufferedImage restoreParent(GenerationMember parent, Rectangle changedArea) {
+        BufferedImage parentImage = getParentImage(parent);
+        if (canvasParent == parent) {
+            copyArea(parentImage, image, dirtyArea);
+        } else {
+            copyAll(parentImage, image);
+            canvasParent = parent;
+        }
+
+        int left = Math.max(changedArea.x, 0);
+        int top = Math.max(changedArea.y, 0);
+        int right = Math.min(changedArea.x + changedArea.width, imageSize.width);
+        int bottom = Math.min(changedArea.y + changedArea.height, imageSize.height);
+        dirtyArea.setBounds(left, top, Math.max(0, right - left), Math.max(0, bottom - top));
+        return parentImage;
+    }
+
+    /**
+     * collects the polygons whose bounds overlap the dirty area, in z-order
+     *
+     * @param polygonData
+     *            the candidate's polygons
+     * @param polygonIndex
+     *            the spatial index of the candidate's polygons
+     * @param fromIndex
+     *            the index of the first polygon of interest
+     * @return the overlapping polygons, in a list that is reused by the next call
+     */
+    private List<PolygonData> getAreaPolygons(List<PolygonData> polygonData, PolygonIndex polygonIndex, int fromIndex) {
+        if (areaIndices.length < polygonIndex.size()) {
+            areaIndices = new int[polygonIndex.size()];
+        }
+
+        int count = polygonIndex.query(dirtyArea, fromIndex, areaIndices);
+        areaPolygons.clear();
+        for (int i = 0; i < count; i++) {
+            areaPolygons.add(polygonData.get(areaIndices[i]));
+        }
+        return areaPolygons;
+    }
+
+    /**
+     * returns the rendered image of a parent. The images of the last few parents are kept, and the least recently used one
+     * is drawn over for a new parent, so that no image is allocated per parent, and members don't hold images of their own.
+     * The parents are only weakly held, so that members which have left the generation can be collected.
+     */
+    private BufferedImage getParentImage(GenerationMember parent) {
+        int slot = 0;
+        for (int i = 0; i < PARENT_SLOTS; i++) {
+            WeakReference<GenerationMember> ref = parentMembers.get(i);
+            if ((ref != null) && (ref.get() == parent)) {
+                parentLastUse[i] = ++parentUses;
+                return parentImages[i];
+            }
+            if (parentLastUse[i] < parentLastUse[slot]) {
+                slot = i;
+            }
+        }
+
+        if (parentImages[slot] == null) {
+            parentImages[slot] = createImage();
+        }
+        renderer.render(parentImages[slot], parent.getGenome());
+        parentMembers.set(slot, new WeakReference<>(parent));
+        parentLastUse[slot] = ++parentUses;
+        return parentImages[slot];
+    }
+
+    private BufferedImage createImage() {
+        return pixelLayout.createImage(imageSize);
+    }
+
+    static void copyAll(BufferedImage src, BufferedImage dst) {
+        Object srcBuffer = PixelLayout.getPixels(src);
+        System.arraycopy(srcBuffer, 0, PixelLayout.getPixels(dst), 0, Array.getLength(srcBuffer));
+    }
+
+    static void copyArea(BufferedImage src, BufferedImage dst, Rectangle area) {
+        Object srcBuffer = PixelLayout.getPixels(src);
+        Object dstBuffer = PixelLayout.getPixels(dst);
+        int stride = PixelLayout.of(src).getElementsPerPixel();
+        int rowLen = area.width * stride;
+        int width = src.getWidth();
+        for (int y = area.y; y < (area.y + area.height); y++) {
+            int offset = ((y * width) + area.x) * stride;
+            System.arraycopy(srcBuffer, offset, dstBuffer, offset, rowLen);
+        }
+    }
+}
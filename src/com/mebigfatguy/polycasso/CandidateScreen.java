@@ -0,0 +1,146 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+/**
+ * decides which candidates are worth scoring in full, for one worker in Fused render mode. A candidate is first drawn and
+ * scored on every few rows of its changed area, and the change in score is scaled up to estimate the change over the whole
+ * area. If even an optimistic take on that estimate, allowing for the margin, misses the elite cutoff, the candidate is
+ * rejected without drawing the rest. Every so often a rejected candidate is scored in full anyway, to count how often the
+ * screen rejects candidates that would have made the elite.
+ */
+public class CandidateScreen {
+
+    private static final int AUDIT_INTERVAL = 32;
+
+    private final int rowStep;
+    private final double margin;
+    private long screened;
+    private long rejected;
+    private long audited;
+    private long falseRejects;
+
+    /**
+     * creates a screen with the row step and margin from the settings
+     *
+     * @param settings
+     *            the settings that describe how to screen
+     */
+    public CandidateScreen(Settings settings) {
+        rowStep = settings.getScreenRowStep();
+        margin = settings.getScreenMargin();
+    }
+
+    /**
+     * returns the number of rows from one screened row to the next
+     *
+     * @return the row step
+     */
+    public int getRowStep() {
+        return rowStep;
+    }
+
+    /**
+     * decides whether a candidate should be rejected on its estimated change in score
+     *
+     * @param parentScore
+     *            the score of the parent the candidate was improved from
+     * @param estimatedChange
+     *            the estimated change in score from the parent to the candidate
+     * @param cutoff
+     *            the score a candidate must beat to be kept
+     * @return whether the candidate can be rejected
+     */
+    public boolean rejects(long parentScore, long estimatedChange, double cutoff) {
+        screened++;
+        double optimisticScore = (parentScore + estimatedChange) - (margin * Math.abs(estimatedChange));
+        if (optimisticScore < cutoff) {
+            return false;
+        }
+
+        rejected++;
+        return true;
+    }
+
+    /**
+     * returns whether the candidate just rejected should be scored in full anyway, to check the screen
+     *
+     * @return whether to audit the rejection
+     */
+    public boolean shouldAudit() {
+        return (rejected % AUDIT_INTERVAL) == 0;
+    }
+
+    /**
+     * records the full score of an audited rejection
+     *
+     * @param score
+     *            the full score of the rejected candidate
+     * @param cutoff
+     *            the score the candidate had to beat to be kept
+     */
+    public void recordAudit(long score, double cutoff) {
+        audited++;
+        if (score < cutoff) {
+            falseRejects++;
+        }
+    }
+
+    /**
+     * returns the number of candidates that were screened
+     *
+     * @return the number of screened candidates
+     */
+    public long getScreened() {
+        return screened;
+    }
+
+    /**
+     * returns the number of candidates that were not scored in full because the screen rejected them
+     *
+     * @return the number of full scorings saved
+     */
+    public long getScoringsSaved() {
+        return rejected - audited;
+    }
+
+    /**
+     * returns the number of audited rejections that would have beaten the cutoff
+     *
+     * @return the number of false rejections found
+     */
+    public long getFalseRejects() {
+        return falseRejects;
+    }
+
+    /**
+     * returns the number of rejections that were scored in full anyway
+     *
+     * @return the number of audited rejections
+     */
+    public long getAudited() {
+        return audited;
+    }
+
+    @Override
+    public String toString() {
+        return "Candidate screen: " + screened + " screened, " + getScoringsSaved() + " full scorings saved, " + falseRejects + " of " + audited
+                + " audited rejections were false";
+    }
+}
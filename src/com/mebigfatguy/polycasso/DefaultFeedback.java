@@ -20,17 +20,22 @@ package com.mebigfatguy.polycasso;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import java.awt.image.WritableRaster;
 
 /**
- * an immutable class for processing a test image against target image for closeness.
+ * an immutable class for processing a test image against target image for closeness. The error is kept per cell of a
+ * {@link DefaultScore} tree. When the parent image is known, only the pixels of the changed area are compared again, and
+ * the difference from the parent's error at those pixels is added to the parent's cells.
  */
 public class DefaultFeedback implements Feedback {
 
     private byte[] targetBuffer;
+    private int[] targetPixels;
     private int width, height;
-    private int gridWidth, gridHeight;
+    private int treeDepth;
+    private int cellWidth, cellHeight;
+    private final ScoreKernel kernel = ScoreKernel.getInstance();
+    private SummedAreaTable targetSums;
+    private final ThreadLocal<DefaultScore> scratchScores = new ThreadLocal<>();
 
     /**
      * creates a feedback object with a given targetImage. Caches the image bytes in member variables.
@@ -46,17 +51,30 @@ public class DefaultFeedback implements Feedback {
      */
     @Override
     public void setTargetImage(BufferedImage targetImage) {
-        WritableRaster raster = targetImage.getRaster();
         width = targetImage.getWidth();
         height = targetImage.getHeight();
-        gridWidth = (width / DefaultScore.NUM_DIVISIONS);
-        gridHeight = (height / DefaultScore.NUM_DIVISIONS);
-        DataBufferByte dbb = (DataBufferByte) raster.getDataBuffer();
-        targetBuffer = dbb.getData();
+        treeDepth = DefaultScore.getTreeDepth(width, height);
+        int cellsPerSide = 1 << treeDepth;
+        cellWidth = (width + cellsPerSide - 1) / cellsPerSide;
+        cellHeight = (height + cellsPerSide - 1) / cellsPerSide;
+        Object pixels = PixelLayout.getPixels(targetImage);
+        targetPixels = (pixels instanceof int[]) ? (int[]) pixels : null;
+        targetBuffer = (pixels instanceof byte[]) ? (byte[]) pixels : null;
+        targetSums = new SummedAreaTable(targetImage);
     }
 
     /**
-     * returns a score of how close the test image is to the target which is the square of the error to the target image
+     * returns the summed-area tables of the target image, from which the mean target color under any polygon can be found
+     *
+     * @return the target's summed-area tables
+     */
+    SummedAreaTable getSummedAreaTable() {
+        return targetSums;
+    }
+
+    /**
+     * returns a score of how close the test image is to the target which is the square of the error to the target image. Every cell that overlaps the
+     * changed area is scored again from scratch.
      *
      * @param testImage
      *            the image to score
@@ -69,149 +87,255 @@ public class DefaultFeedback implements Feedback {
      */
     @Override
     public Score calculateScore(BufferedImage testImage, Score previousScore, Rectangle changedArea) {
+        return calculateCellScores(PixelLayout.getPixels(testImage), previousScore, changedArea, Double.MAX_VALUE, false);
+    }
 
-        WritableRaster raster = testImage.getRaster();
-        DataBufferByte dbb = (DataBufferByte) raster.getDataBuffer();
-        byte[] testBuffer = dbb.getData();
-
-        Score score;
-        if ((changedArea == null) || (changedArea.width > changedArea.height)) {
-            score = calculateYMajorScore(testBuffer, previousScore, changedArea);
-        } else {
-            score = calculateXMajorScore(testBuffer, previousScore, changedArea);
+    /**
+     * returns a score of how close the test image is to the target. When the parent image is given, only the pixels of the changed area are compared, and
+     * the difference from the parent's error at those pixels is added to the parent's score. Scoring stops as soon as the score is sure to be at least the
+     * bound, as the error still to be added can't be negative. The score returned is the calling thread's scratch score, so nothing is allocated for a
+     * candidate that is thrown away, and it must be frozen to be kept past the thread's next call.
+     *
+     * @param testImage
+     *            the image to score
+     * @param parentImage
+     *            the image from which this image was created, which is the same as the test image outside of the changed area, or null
+     * @param previousScore
+     *            the score of the parent image
+     * @param changedArea
+     *            the area of changed between the parent generated image and this one
+     * @param bound
+     *            the score at or above which the test image is of no interest
+     *
+     * @return a score that represents its closeness to ideal, or null if it is sure to be at least the bound
+     */
+    @Override
+    public Score calculateScore(BufferedImage testImage, BufferedImage parentImage, Score previousScore, Rectangle changedArea, double bound) {
+        Object testBuffer = PixelLayout.getPixels(testImage);
+        if ((parentImage == null) || (changedArea == null) || !isTreeScore(previousScore)) {
+            return calculateCellScores(testBuffer, previousScore, changedArea, bound, true);
         }
 
-        return score;
-
-    }
+        DefaultScore score = getScratchScore((DefaultScore) previousScore);
+        Rectangle area = changedArea.intersection(new Rectangle(0, 0, width, height));
+        Object parentBuffer = PixelLayout.getPixels(parentImage);
+        int right = area.x + area.width;
+        int bottom = area.y + area.height;
+        boolean bounded = bound < Double.MAX_VALUE;
+        long parentErrorLeft = bounded ? getCellsError((DefaultScore) previousScore, area) : 0L;
+        for (int y = area.y; y < bottom; y++) {
+            if (testBuffer instanceof int[]) {
+                parentErrorLeft -= addRowDeltas((int[]) testBuffer, (int[]) parentBuffer, y, area.x, right, score);
+            } else {
+                parentErrorLeft -= addRowDeltas((byte[]) testBuffer, (byte[]) parentBuffer, y, area.x, right, score);
+            }
 
-    private Score calculateYMajorScore(byte[] testBuffer, Score previousScore, Rectangle changedArea) {
+            if (bounded && ((score.getDelta() - parentErrorLeft) >= bound)) {
+                return null;
+            }
+        }
 
-        DefaultScore score = (previousScore != null) ? (DefaultScore) previousScore.clone() : new DefaultScore();
+        // the cells' error outside the area is still counted as left, so the finished score is checked on its own
+        return (score.getDelta() >= bound) ? null : score;
+    }
 
-        boolean needFullRecalc = (previousScore == null) || (changedArea == null);
-        score.overallScore = 0L;
+    /**
+     * returns the error of a parent image over the cells that overlap an area, which is at least its error over the area
+     * itself. It is read from the parent's score, rather than worked out from the parent's pixels, so that a candidate's
+     * score can be bounded before its rows are scored, at no cost.
+     *
+     * @param parentScore
+     *            the score of the parent image
+     * @param area
+     *            the area of the image, which must lie within the image
+     * @return the error of the cells over the area
+     */
+    long getCellsError(DefaultScore parentScore, Rectangle area) {
+        if (area.isEmpty()) {
+            return 0L;
+        }
 
-        int gridTop = 0;
-        for (int y = 0; y < DefaultScore.NUM_DIVISIONS; y++) {
-            int gridBottom;
-            if (y < (DefaultScore.NUM_DIVISIONS - 1)) {
-                gridBottom = gridTop + gridHeight;
-            } else {
-                gridBottom = height;
+        int lastCellX = ((area.x + area.width) - 1) / cellWidth;
+        int lastCellY = ((area.y + area.height) - 1) / cellHeight;
+        long error = 0L;
+        for (int cellY = area.y / cellHeight; cellY <= lastCellY; cellY++) {
+            for (int cellX = area.x / cellWidth; cellX <= lastCellX; cellX++) {
+                error += parentScore.getCellScore(cellX, cellY);
             }
+        }
+        return error;
+    }
 
-            if (needFullRecalc || ((changedArea.y <= gridBottom) && ((changedArea.y + changedArea.height) >= gridTop))) {
-                int gridLeft = 0;
-                for (int x = 0; x < DefaultScore.NUM_DIVISIONS; x++) {
-                    int gridRight;
-                    if (x < (DefaultScore.NUM_DIVISIONS - 1)) {
-                        gridRight = gridLeft + gridWidth;
-                    } else {
-                        gridRight = width;
-                    }
-
-                    if (needFullRecalc || ((changedArea.x <= gridRight) && ((changedArea.x + changedArea.width) >= gridLeft))) {
+    /**
+     * returns the calling thread's scratch score, set to the value of a parent's score
+     *
+     * @param source
+     *            the parent's score, with a tree as deep as this feedback's
+     * @return the scratch score
+     */
+    DefaultScore getScratchScore(DefaultScore source) {
+        DefaultScore score = scratchScores.get();
+        if (score == null) {
+            score = DefaultScore.createScratch(treeDepth);
+            scratchScores.set(score);
+        }
+        score.copyFrom(source);
+        return score;
+    }
 
-                        long gridError = calculateGridScore(testBuffer, gridLeft, gridTop, gridRight, gridBottom);
+    private Score calculateCellScores(Object testBuffer, Score previousScore, Rectangle changedArea, double bound, boolean useScratch) {
+        DefaultScore score;
+        int firstCellX, firstCellY, lastCellX, lastCellY;
+        if ((changedArea == null) || !isTreeScore(previousScore)) {
+            score = new DefaultScore(treeDepth);
+            firstCellX = 0;
+            firstCellY = 0;
+            lastCellX = (width - 1) / cellWidth;
+            lastCellY = (height - 1) / cellHeight;
+        } else {
+            score = useScratch ? getScratchScore((DefaultScore) previousScore) : ((DefaultScore) previousScore).clone();
+            Rectangle area = changedArea.intersection(new Rectangle(0, 0, width, height));
+            if (area.isEmpty()) {
+                return score;
+            }
+            firstCellX = area.x / cellWidth;
+            firstCellY = area.y / cellHeight;
+            lastCellX = ((area.x + area.width) - 1) / cellWidth;
+            lastCellY = ((area.y + area.height) - 1) / cellHeight;
+        }
 
-                        score.gridScores[x][y] = gridError;
-                        score.overallScore += gridError;
-                    } else {
-                        score.overallScore += score.gridScores[x][y];
-                    }
+        // the error of the cells that are kept, plus the cells scored so far
+        long knownError = score.getDelta();
+        for (int cellY = firstCellY; cellY <= lastCellY; cellY++) {
+            for (int cellX = firstCellX; cellX <= lastCellX; cellX++) {
+                knownError -= score.getCellScore(cellX, cellY);
+            }
+        }
 
-                    gridLeft = gridRight;
-                }
-            } else {
-                for (int x = 0; x < DefaultScore.NUM_DIVISIONS; x++) {
-                    score.overallScore += score.gridScores[x][y];
+        for (int cellY = firstCellY; cellY <= lastCellY; cellY++) {
+            for (int cellX = firstCellX; cellX <= lastCellX; cellX++) {
+                long cellError = calculateCellScore(testBuffer, cellX, cellY);
+                score.setCellScore(cellX, cellY, cellError);
+                knownError += cellError;
+                if (knownError >= bound) {
+                    return null;
                 }
             }
-
-            gridTop = gridBottom;
         }
 
         return score;
     }
 
-    private Score calculateXMajorScore(byte[] testBuffer, Score previousScore, Rectangle changedArea) {
-
-        DefaultScore score = (previousScore != null) ? (DefaultScore) previousScore.clone() : new DefaultScore();
-
-        boolean needFullRecalc = (previousScore == null) || (changedArea == null);
-        score.overallScore = 0L;
-
-        int gridLeft = 0;
-        for (int x = 0; x < DefaultScore.NUM_DIVISIONS; x++) {
-            int gridRight;
-            if (x < (DefaultScore.NUM_DIVISIONS - 1)) {
-                gridRight = gridLeft + gridWidth;
-            } else {
-                gridRight = width;
-            }
+    /**
+     * adds the change in error of part of one row of a 4 byte ABGR test image, compared to its parent, to the cells of a score
+     *
+     * @param testBuffer
+     *            the ABGR bytes of the test image
+     * @param parentBuffer
+     *            the ABGR bytes of the parent image the test image was improved from
+     * @param y
+     *            the row
+     * @param left
+     *            the first column that changed
+     * @param right
+     *            the column after the last that changed
+     * @param score
+     *            the score to add the changes to, which starts as a copy of the parent's score
+     * @return the parent's error on the part of the row
+     */
+    long addRowDeltas(byte[] testBuffer, byte[] parentBuffer, int y, int left, int right, DefaultScore score) {
+        long parentError = 0L;
+        int cellY = y / cellHeight;
+        int rowStart = y * width;
+        int x = left;
+        while (x < right) {
+            int cellX = x / cellWidth;
+            int segmentEnd = Math.min((cellX + 1) * cellWidth, right);
+
+            int start = (rowStart + x) * 4;
+            int end = (rowStart + segmentEnd) * 4;
+            long segmentParentError = kernel.error(targetBuffer, parentBuffer, start, end);
+            score.addCellScore(cellX, cellY, kernel.error(targetBuffer, testBuffer, start, end) - segmentParentError);
+            parentError += segmentParentError;
+            x = segmentEnd;
+        }
+        return parentError;
+    }
 
-            if (needFullRecalc || ((changedArea.x <= gridRight) && ((changedArea.x + changedArea.width) >= gridLeft))) {
-                int gridTop = 0;
-                for (int y = 0; y < DefaultScore.NUM_DIVISIONS; y++) {
-                    int gridBottom;
-                    if (y < (DefaultScore.NUM_DIVISIONS - 1)) {
-                        gridBottom = gridTop + gridHeight;
-                    } else {
-                        gridBottom = height;
-                    }
+    /**
+     * adds the change in error of part of one row of a packed RGB test image, compared to its parent, to the cells of a score
+     *
+     * @param testPixels
+     *            the RGB ints of the test image
+     * @param parentPixels
+     *            the RGB ints of the parent image the test image was improved from
+     * @param y
+     *            the row
+     * @param left
+     *            the first column that changed
+     * @param right
+     *            the column after the last that changed
+     * @param score
+     *            the score to add the changes to, which starts as a copy of the parent's score
+     * @return the parent's error on the part of the row
+     */
+    long addRowDeltas(int[] testPixels, int[] parentPixels, int y, int left, int right, DefaultScore score) {
+        long parentError = 0L;
+        int cellY = y / cellHeight;
+        int rowStart = y * width;
+        int x = left;
+        while (x < right) {
+            int cellX = x / cellWidth;
+            int segmentEnd = Math.min((cellX + 1) * cellWidth, right);
+
+            int start = rowStart + x;
+            int end = rowStart + segmentEnd;
+            long segmentParentError = kernel.error(targetPixels, parentPixels, start, end);
+            score.addCellScore(cellX, cellY, kernel.error(targetPixels, testPixels, start, end) - segmentParentError);
+            parentError += segmentParentError;
+            x = segmentEnd;
+        }
+        return parentError;
+    }
 
-                    if (needFullRecalc || ((changedArea.y <= gridBottom) && ((changedArea.y + changedArea.height) >= gridTop))) {
+    private boolean isTreeScore(Score score) {
+        return (score instanceof DefaultScore) && (((DefaultScore) score).depth == treeDepth);
+    }
 
-                        long gridError = calculateGridScore(testBuffer, gridLeft, gridTop, gridRight, gridBottom);
+    private long calculateCellScore(Object testBuffer, int cellX, int cellY) {
+        int cellLeft = cellX * cellWidth;
+        int cellTop = cellY * cellHeight;
+        int cellRight = Math.min(cellLeft + cellWidth, width);
+        int cellBottom = Math.min(cellTop + cellHeight, height);
 
-                        score.gridScores[x][y] = gridError;
-                        score.overallScore += gridError;
-                    } else {
-                        score.overallScore += score.gridScores[x][y];
-                    }
+        long cellError = 0L;
+        for (int y = cellTop; y < cellBottom; y++) {
+            int pixelStart = (y * width) + cellLeft;
+            int pixelEnd = pixelStart + (cellRight - cellLeft);
 
-                    gridTop = gridBottom;
-                }
+            if (testBuffer instanceof int[]) {
+                cellError += kernel.error(targetPixels, (int[]) testBuffer, pixelStart, pixelEnd);
             } else {
-                for (int y = 0; y < DefaultScore.NUM_DIVISIONS; y++) {
-                    score.overallScore += score.gridScores[x][y];
-                }
+                cellError += kernel.error(targetBuffer, (byte[]) testBuffer, pixelStart * 4, pixelEnd * 4);
             }
-
-            gridLeft = gridRight;
         }
 
-        return score;
+        return cellError;
     }
 
-    private long calculateGridScore(byte[] testBuffer, int gridLeft, int gridTop, int gridRight, int gridBottom) {
-        long gridError = 0L;
-        for (int gy = gridTop; gy < gridBottom; gy++) {
-            int pixelStart = (gy * width * 4) + (gridLeft * 4);
-            int pixelEnd = pixelStart + ((gridRight - gridLeft) * 4);
-
-            // index 0 is alpha, start at 1 (blue)
-            for (int i = pixelStart + 1; i < pixelEnd; i++) {
-                int blue1 = targetBuffer[i] & 0x0FF;
-                int blue2 = testBuffer[i++] & 0x0FF;
-                long blueError = blue1 - blue2;
-                blueError *= blueError;
-
-                int green1 = targetBuffer[i] & 0x0FF;
-                int green2 = testBuffer[i++] & 0x0FF;
-                long greenError = green1 - green2;
-                greenError *= greenError;
-
-                int red1 = targetBuffer[i] & 0x0FF;
-                int red2 = testBuffer[i++] & 0x0FF;
-                long redError = red1 - red2;
-                redError *= redError;
-
-                gridError += redError + greenError + blueError;
-            }
-        }
-
-        return gridError;
+    /**
+     * returns the square of the error between two packed RGB pixels, summed over the three channels
+     *
+     * @param pixel1
+     *            the first pixel, as 0xRRGGBB in the low three bytes
+     * @param pixel2
+     *            the second pixel, as 0xRRGGBB in the low three bytes
+     * @return the squared error
+     */
+    static int pixelError(int pixel1, int pixel2) {
+        int redError = ((pixel1 >> 16) & 0x0FF) - ((pixel2 >> 16) & 0x0FF);
+        int greenError = ((pixel1 >> 8) & 0x0FF) - ((pixel2 >> 8) & 0x0FF);
+        int blueError = (pixel1 & 0x0FF) - (pixel2 & 0x0FF);
+        return (redError * redError) + (greenError * greenError) + (blueError * blueError);
     }
-}
\ No newline at end of file
+}
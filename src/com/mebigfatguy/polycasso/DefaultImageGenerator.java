@@ -18,30 +18,53 @@
  */
 package com.mebigfatguy.polycasso;
 
-import java.awt.AlphaComposite;
 import java.awt.Color;
-import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * class that generates test images iteratively looking for the best image that matches a target. The images are generated from semi-transparent polygons that
- * are improved upon over time. This class generates multiple images in parallel to keep multicore processors busy.
+ * are improved upon over time. This class generates multiple images in parallel to keep multicore processors busy. When more than one pyramid level is
+ * configured, the images are first evolved against smaller copies of the target, moving on to the next larger copy when the best score stops improving.
+ * When more than one island is configured, the threads are split between islands that each evolve a generation of their own, every so often sending their
+ * best members on to another island.
  */
 public class DefaultImageGenerator implements ImageGenerator, Runnable {
+    private static final int FRAME_POOL_SIZE = 4;
+    private static final int MIGRANTS = 2;
+    private static final int MAX_BATCH_SIZE = 16;
+
     private final Set<ImageGeneratedListener> listeners = new HashSet<>();
     private final Settings settings;
     private final BufferedImage targetImage;
-    private GenerationHandler generationHandler;
     private final Dimension imageSize;
-    private Feedback feedback;
+    private final int workerCount;
+    private final int islandCount;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final ThreadPoolExecutor turnoverExecutor;
+    private final SeededRandom random;
+    private SeededRandom[] workerRandoms;
+    private PyramidLevel[] levels;
+    private volatile PyramidLevel level;
+    private final Object levelLock = new Object();
+    private final FramePool framePool;
     private Thread[] t = null;
     private final Object startStopLock = new Object();
 
@@ -58,17 +81,21 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
     public DefaultImageGenerator(Settings confSettings, Image image, Dimension size) {
         settings = confSettings;
         imageSize = trimSize(size, settings.getMaxImageSize());
-        targetImage = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
+        targetImage = settings.getPixelLayout().createImage(imageSize);
+        framePool = new FramePool(imageSize, settings.getPixelLayout(), FRAME_POOL_SIZE);
+        workerCount = Runtime.getRuntime().availableProcessors() + 1;
+        islandCount = Math.max(1, Math.min(settings.getIslandCount(), workerCount));
+        turnoverExecutor = createTurnoverExecutor();
+        random = SeededRandom.create(settings.getRandomSeed());
 
         Graphics g = targetImage.getGraphics();
         try {
             g.drawImage(image, 0, 0, imageSize.width, imageSize.height, Color.WHITE, null);
-            generationHandler = new GenerationHandler(settings, imageSize);
-            feedback = new DefaultFeedback();
-            feedback.setTargetImage(targetImage);
         } finally {
             g.dispose();
         }
+
+        buildLevels();
     }
 
     /**
@@ -121,7 +148,10 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
      */
     @Override
     public void fireImageGenerated(Image image) {
-        ImageGeneratedEvent event = new ImageGeneratedEvent(this, image);
+        fireImageGenerated(new ImageGeneratedEvent(this, image));
+    }
+
+    private void fireImageGenerated(ImageGeneratedEvent event) {
         for (ImageGeneratedListener listener : listeners) {
             listener.imageGenerated(event);
         }
@@ -136,7 +166,12 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
             if (t == null) {
 
                 populateGenerationZeroElite();
-                t = new Thread[Runtime.getRuntime().availableProcessors() + 1];
+                nextWorker.set(0);
+                workerRandoms = new SeededRandom[workerCount];
+                for (int i = 0; i < workerCount; i++) {
+                    workerRandoms[i] = random.split();
+                }
+                t = new Thread[workerCount];
                 for (int i = 0; i < t.length; i++) {
                     t[i] = new Thread(this);
                     t[i].setName("Improver : " + i);
@@ -177,7 +212,7 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
             if (t != null) {
                 stopGenerating();
                 t = new Thread[1];
-                t[0] = new Thread(new ImageCompleter(this, targetImage, generationHandler.getBestMember().getData(), imageSize));
+                t[0] = new Thread(new ImageCompleter(this, targetImage, getBestData(), imageSize));
                 t[0].start();
             }
         }
@@ -190,7 +225,8 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
      */
     @Override
     public PolygonData[] getBestData() {
-        return generationHandler.getBestMember().getData();
+        PyramidLevel current = level;
+        return scaleData(current.getBestMember().getData(), current.size, imageSize);
     }
 
     /**
@@ -200,31 +236,69 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
     @Override
     public void run() {
         try {
-            BufferedImage image = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
-            Graphics2D g2d = (Graphics2D) image.getGraphics();
+            int worker = nextWorker.getAndIncrement();
+            int island = worker % islandCount;
+            SeededRandom workerRandom = workerRandoms[worker];
+            PyramidLevel runLevel = null;
+            GenerationHandler generationHandler = null;
+            CandidateBatch batch = new CandidateBatch();
+            CandidateCanvas canvas = null;
             try {
-                Composite srcOpaque = AlphaComposite.getInstance(AlphaComposite.SRC, 1.0f);
-                Improver improver = new Improver(settings, generationHandler, imageSize);
+                Improver improver = null;
 
                 while (!Thread.interrupted()) {
+                    PyramidLevel current = level;
+                    if (current != runLevel) {
+                        if (canvas != null) {
+                            canvas.dispose();
+                        }
+                        if (generationHandler != null) {
+                            batch.flush(generationHandler);
+                        }
+                        runLevel = current;
+                        generationHandler = runLevel.islands[island];
+                        canvas = new CandidateCanvas(settings, runLevel.size);
+                        improver = new Improver(settings, generationHandler, runLevel.size, runLevel.targetSums, runLevel.residuals, workerRandom);
+                    }
+
                     ImprovementType type = improver.improveRandomly();
 
-                    List<PolygonData> data = improver.getData();
-                    imagePolygonData(g2d, data, srcOpaque);
+                    // a genome that is already known, such as a mutation that changed nothing, can't add anything to the generation
+                    if (generationHandler.getScoreCache().get(improver.getGenomeHash()) != null) {
+                        improver.typeWasSuccessful(type, false);
+                        continue;
+                    }
 
+                    MutatedGenome data = improver.getData();
                     GenerationMember parentMember = improver.getParentGenerationMember();
-                    Score delta = feedback.calculateScore(image, (parentMember != null) ? parentMember.getScore() : null, improver.getChangedArea());
+                    Score delta = canvas.renderAndScore(data, improver.getPolygonIndex(), parentMember, improver.getChangedArea(), improver.getChangedIndex(),
+                            runLevel.feedback, generationHandler.getScoreBound());
+                    if (delta == null) {
+                        improver.typeWasSuccessful(type, false);
+                        continue;
+                    }
 
                     boolean wasSuccessful;
 
-                    ImprovementResult result = generationHandler.addPolygonData(delta, data.toArray(new PolygonData[data.size()]));
+                    ImprovementResult result;
+                    if (delta.getDelta() < generationHandler.getBestMember().getScore().getDelta()) {
+                        // a possible new best is added at once, while its image is still on the canvas
+                        result = generationHandler.addPolygonData(delta, data, improver.getPolygonIndex());
+                    } else {
+                        result = (delta.getDelta() < generationHandler.getEliteCutOff()) ? ImprovementResult.ELITE : ImprovementResult.FAIL;
+                        batch.add(new GenerationMember(delta.freeze(), data.materialize(), improver.getPolygonIndex()), generationHandler);
+                    }
+
                     switch (result) {
                         case BEST:
-                            fireImageGenerated(image);
+                            // the best of this island, which is only shown if it is the best of all of them
+                            if (delta.getDelta() <= runLevel.getBestMember().getScore().getDelta()) {
+                                if (runLevel.residuals != null) {
+                                    runLevel.residuals.offer(canvas.getImage());
+                                }
+                                fireImageGenerated(new ImageGeneratedEvent(this, createFrame(canvas.getImage()), framePool));
+                            }
                             wasSuccessful = true;
-                            image = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
-                            g2d.dispose();
-                            g2d = (Graphics2D) image.getGraphics();
                         break;
 
                         case ELITE:
@@ -236,41 +310,212 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
                     }
 
                     improver.typeWasSuccessful(type, wasSuccessful);
+
+                    if (islandCount > 1) {
+                        migrate(runLevel, island, workerRandom);
+                    }
+
+                    if ((runLevel.levelNumber < (levels.length - 1)) && (generationHandler.getStalledGenerations() >= settings.getPlateauGenerations())) {
+                        advanceLevel(runLevel, island);
+                    }
                 }
             } finally {
-                g2d.dispose();
+                if (generationHandler != null) {
+                    batch.flush(generationHandler);
+                }
+                if (canvas != null) {
+                    canvas.dispose();
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void imagePolygonData(Graphics2D g2d, List<PolygonData> polygonData, Composite srcOpaque) {
-        g2d.setColor(Color.BLACK);
-        g2d.setComposite(srcOpaque);
-        g2d.fillRect(0, 0, imageSize.width, imageSize.height);
+    private void populateGenerationZeroElite() {
+        PyramidLevel current = level;
+        CandidateCanvas canvas = new CandidateCanvas(settings, current.size);
+        try {
+            for (GenerationHandler generationHandler : current.islands) {
+                for (int i = 0; i < settings.getEliteSize(); i++) {
+                    List<PolygonData> polygons = new ArrayList<>();
+                    PolygonData pd = PolygonData.randomPoly(random, current.size, settings.getMaxPoints(), null);
+                    polygons.add(pd);
+                    Score delta = canvas.renderAndScore(polygons, null, null, null, 0, current.feedback);
+                    generationHandler.addPolygonData(delta, polygons.toArray(new PolygonData[polygons.size()]));
+                }
+            }
+        } finally {
+            canvas.dispose();
+        }
+    }
+
+    /**
+     * builds the resolution levels to evolve at, from the coarsest to the full image size, each with its own copy of the target, feedback and generation
+     * handler. Each smaller target is the next larger one scaled by half.
+     */
+    private void buildLevels() {
+        int numLevels = Math.max(1, settings.getPyramidLevels());
+        levels = new PyramidLevel[numLevels];
 
-        for (PolygonData pd : polygonData) {
-            pd.draw(g2d);
+        BufferedImage levelTarget = targetImage;
+        for (int i = numLevels - 1; i >= 0; i--) {
+            if (i < (numLevels - 1)) {
+                levelTarget = halveImage(levelTarget);
+            }
+            levels[i] = new PyramidLevel(settings, i, levelTarget, islandCount, turnoverExecutor, random);
         }
+
+        level = levels[0];
     }
 
-    private void populateGenerationZeroElite() {
-        Composite srcOpaque = AlphaComposite.getInstance(AlphaComposite.SRC, 1.0f);
-        for (int i = 0; i < settings.getEliteSize(); i++) {
-            BufferedImage image = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
-            List<PolygonData> polygons = new ArrayList<>();
-            PolygonData pd = PolygonData.randomPoly(imageSize, settings.getMaxPoints());
-            polygons.add(pd);
-            Graphics2D g2d = (Graphics2D) image.getGraphics();
+    /**
+     * creates the coordinator that turns full generations over to the next, off the workers' threads. Its one thread goes away when there is nothing to turn
+     * over, so an idle generator holds no thread.
+     *
+     * @return the turnover executor
+     */
+    private static ThreadPoolExecutor createTurnoverExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Generation Turnover");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private BufferedImage halveImage(BufferedImage image) {
+        Dimension size = new Dimension(Math.max(1, image.getWidth() / 2), Math.max(1, image.getHeight() / 2));
+        BufferedImage halfImage = settings.getPixelLayout().createImage(size);
+        Graphics2D g = halfImage.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, size.width, size.height, null);
+        } finally {
+            g.dispose();
+        }
+        return halfImage;
+    }
+
+    /**
+     * moves evolution on from a level whose best score has stopped improving to the next larger one. The current generation of each island is scaled up, and
+     * scored again against the larger target, to seed the same island of the new level. Does nothing if another thread has already moved on.
+     *
+     * @param from
+     *            the level that has stopped improving
+     * @param island
+     *            the island whose best score has stopped improving
+     */
+    private void advanceLevel(PyramidLevel from, int island) {
+        synchronized (levelLock) {
+            if (level != from) {
+                return;
+            }
+
+            PyramidLevel next = levels[from.levelNumber + 1];
+            CandidateCanvas canvas = new CandidateCanvas(settings, next.size);
+            try {
+                for (int i = 0; i < from.islands.length; i++) {
+                    for (GenerationMember member : from.islands[i].getMembers()) {
+                        PolygonData[] data = scaleData(member.getData(), from.size, next.size);
+                        List<PolygonData> polygons = new ArrayList<>(data.length);
+                        Collections.addAll(polygons, data);
+                        Score delta = canvas.renderAndScore(polygons, null, null, null, 0, next.feedback);
+                        next.islands[i].addPolygonData(delta, data);
+                    }
+                }
+            } finally {
+                canvas.dispose();
+            }
+
+            if (Polycasso.DEBUG) {
+                System.out.println("Moving from " + from.size.width + "x" + from.size.height + " to " + next.size.width + "x" + next.size.height + " after "
+                        + from.islands[island].getStalledGenerations() + " stalled generations");
+            }
+
+            level = next;
+        }
+    }
+
+    /**
+     * sends the best members of an island on to another island, if the island has evolved another migration interval's worth of generations since it last
+     * sent any. Only one of the island's threads sends them.
+     *
+     * @param runLevel
+     *            the level being evolved
+     * @param island
+     *            the island the calling thread evolves
+     * @param workerRandom
+     *            the calling thread's source of randomness
+     */
+    private void migrate(PyramidLevel runLevel, int island, Random workerRandom) {
+        GenerationHandler from = runLevel.islands[island];
+        int migration = from.getGenerationNumber() / settings.getMigrationInterval();
+        int lastMigration = runLevel.migrations.get(island);
+        if ((migration <= lastMigration) || !runLevel.migrations.compareAndSet(island, lastMigration, migration)) {
+            return;
+        }
+
+        int to;
+        if (settings.getMigrationTopology() == MigrationTopology.Random) {
+            to = workerRandom.nextInt(islandCount - 1);
+            if (to >= island) {
+                to++;
+            }
+        } else {
+            to = (island + 1) % islandCount;
+        }
+
+        GenerationMember[] members = from.getMembers();
+        int migrants = Math.min(MIGRANTS, members.length);
+        for (int i = 0; i < migrants; i++) {
+            runLevel.islands[to].addPolygonData(members[i].getScore(), members[i].getGenome());
+        }
+
+        if (Polycasso.DEBUG) {
+            System.out.println("Island " + island + " sent " + migrants + " members to island " + to + " after " + from.getGenerationNumber() + " generations");
+        }
+    }
+
+    /**
+     * copies a new best image into a pooled frame of the full image size, scaling it up if it was generated at a smaller pyramid level
+     *
+     * @param image
+     *            the new best image
+     * @return the pooled frame holding the image
+     */
+    private BufferedImage createFrame(BufferedImage image) {
+        BufferedImage frame = framePool.acquire();
+        if ((image.getWidth() == imageSize.width) && (image.getHeight() == imageSize.height)) {
+            CandidateCanvas.copyAll(image, frame);
+        } else {
+            Graphics2D g = frame.createGraphics();
             try {
-                imagePolygonData(g2d, polygons, srcOpaque);
-                Score delta = feedback.calculateScore(image, null, null);
-                generationHandler.addPolygonData(delta, polygons.toArray(new PolygonData[polygons.size()]));
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(image, 0, 0, imageSize.width, imageSize.height, null);
             } finally {
-                g2d.dispose();
+                g.dispose();
             }
         }
+        return frame;
+    }
+
+    private static PolygonData[] scaleData(PolygonData[] data, Dimension fromSize, Dimension toSize) {
+        if (fromSize.equals(toSize)) {
+            return data;
+        }
+
+        double xScale = (double) toSize.width / (double) fromSize.width;
+        double yScale = (double) toSize.height / (double) fromSize.height;
+        PolygonData[] scaledData = new PolygonData[data.length];
+        for (int i = 0; i < data.length; i++) {
+            scaledData[i] = data[i].scale(xScale, yScale);
+        }
+        return scaledData;
     }
 
     private Dimension trimSize(Dimension origSize, Dimension maxSize) {
@@ -285,4 +530,90 @@ public class DefaultImageGenerator implements ImageGenerator, Runnable {
 
         return new Dimension((int) (frac * origSize.width), (int) (frac * origSize.height));
     }
+
+    /**
+     * the scored candidates a worker has yet to add to its generation. Adding candidates one at a time is cheapest when the workers don't get in each other's
+     * way, so the batch starts at a single candidate, doubles whenever the generation handler had to retry publishing since the last flush, and shrinks back
+     * when it didn't.
+     */
+    private static class CandidateBatch {
+        private final List<GenerationMember> members = new ArrayList<>(MAX_BATCH_SIZE);
+        private int batchSize = 1;
+        private long lastRetries;
+
+        void add(GenerationMember member, GenerationHandler generationHandler) {
+            members.add(member);
+            if (members.size() >= batchSize) {
+                flush(generationHandler);
+            }
+        }
+
+        void flush(GenerationHandler generationHandler) {
+            if (members.isEmpty()) {
+                return;
+            }
+
+            generationHandler.addPolygonData(members);
+            members.clear();
+
+            long retries = generationHandler.getPublishRetries();
+            if (retries > lastRetries) {
+                batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+            } else if (batchSize > 1) {
+                batchSize--;
+            }
+            lastRetries = retries;
+        }
+    }
+
+    /**
+     * one resolution of the image pyramid, with the target at that size, and the feedback and the generations of each island used to evolve against it
+     */
+    private static class PyramidLevel {
+        final int levelNumber;
+        final Dimension size;
+        final Feedback feedback;
+        final SummedAreaTable targetSums;
+        final ResidualSampler residuals;
+        final GenerationHandler[] islands;
+        final AtomicIntegerArray migrations;
+
+        PyramidLevel(Settings settings, int number, BufferedImage levelTarget, int islandCount, Executor turnover, SeededRandom random) {
+            levelNumber = number;
+            size = new Dimension(levelTarget.getWidth(), levelTarget.getHeight());
+            if (settings.getRenderMode() == RenderMode.Fused) {
+                FusedFeedback fusedFeedback = new FusedFeedback();
+                fusedFeedback.setTargetImage(levelTarget);
+                feedback = fusedFeedback;
+                targetSums = fusedFeedback.getSummedAreaTable();
+            } else {
+                DefaultFeedback defaultFeedback = new DefaultFeedback();
+                defaultFeedback.setTargetImage(levelTarget);
+                feedback = defaultFeedback;
+                targetSums = defaultFeedback.getSummedAreaTable();
+            }
+            residuals = settings.isUseResidualSampling() ? new ResidualSampler(levelTarget) : null;
+            islands = new GenerationHandler[islandCount];
+            for (int i = 0; i < islandCount; i++) {
+                islands[i] = new GenerationHandler(settings, size, turnover, random.split());
+            }
+            migrations = new AtomicIntegerArray(islandCount);
+        }
+
+        /**
+         * returns the best member of all the islands
+         *
+         * @return the best member
+         */
+        GenerationMember getBestMember() {
+            GenerationMember best = islands[0].getBestMember();
+            for (int i = 1; i < islands.length; i++) {
+                GenerationMember islandBest = islands[i].getBestMember();
+                if (islandBest.getScore().getDelta() < best.getScore().getDelta()) {
+                    best = islandBest;
+                }
+            }
+            return best;
+        }
+    }
 }
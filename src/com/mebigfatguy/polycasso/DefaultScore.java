@@ -1,51 +1,226 @@
 package com.mebigfatguy.polycasso;
 
+import java.util.Random;
+
 /**
- * a default implementation of a score for the error in a image against a target image this score maintains a grid of scores representing scores in sections of
- * the image, and then rolls up these scores to an overall score.
+ * a default implementation of a score for the error in a image against a target image this score maintains a quadtree of scores representing scores in
+ * sections of the image, and then rolls up these scores to an overall score. The leaves are a square grid of cells, 2^depth on a side, and each node above
+ * them holds the sum of its four children, so the root is the overall score. How deep the tree is depends on the image size, see {@link #getTreeDepth}.
  */
 public class DefaultScore implements Score {
 
     private static final long serialVersionUID = 2603006530810631094L;
-    static final int NUM_DIVISIONS = 8;
+
+    /**
+     * the largest width or height a cell may have, before the tree is made a level deeper
+     */
+    static final int MAX_CELL_SIZE = 64;
+
+    /**
+     * the deepest tree used, no matter how large the image
+     */
+    static final int MAX_DEPTH = 6;
 
     /**
      * a worst case score
      */
     public static final DefaultScore MAX_SCORE = new DefaultScore(Long.MAX_VALUE);
 
-    long gridScores[][] = new long[NUM_DIVISIONS][NUM_DIVISIONS];
+    final int depth;
+    long nodeScores[];
     long overallScore;
+    private transient boolean scratch;
 
     /**
-     * constructs an empty score
+     * constructs an empty score of a single cell
      */
     public DefaultScore() {
+        this(0);
+    }
+
+    /**
+     * constructs an empty score with a tree of the given depth
+     *
+     * @param treeDepth
+     *            the depth of the tree, 0 being a single cell
+     */
+    DefaultScore(int treeDepth) {
+        depth = treeDepth;
+        nodeScores = new long[getLevelOffset(treeDepth + 1)];
         overallScore = 0;
     }
 
     /**
-     * constructs a score with the specified delta, spreads the score across all grids
+     * constructs a score of a single cell with the specified delta
      *
      * @param delta
      *            the delta score
      */
     public DefaultScore(long delta) {
+        this(0);
+        nodeScores[0] = delta;
         overallScore = delta;
+    }
+
+    /**
+     * constructs a score with a tree of the given depth that is reused for one candidate after another, and so is copied when
+     * frozen
+     *
+     * @param treeDepth
+     *            the depth of the tree, 0 being a single cell
+     * @return the scratch score
+     */
+    static DefaultScore createScratch(int treeDepth) {
+        DefaultScore score = new DefaultScore(treeDepth);
+        score.scratch = true;
+        return score;
+    }
+
+    /**
+     * sets this score to the value of another score with a tree of the same depth, without allocating
+     *
+     * @param source
+     *            the score to copy
+     */
+    void copyFrom(DefaultScore source) {
+        System.arraycopy(source.nodeScores, 0, nodeScores, 0, nodeScores.length);
+        overallScore = source.overallScore;
+    }
+
+    /**
+     * returns the depth of the tree to use for an image, such that no cell is wider or taller than {@link #MAX_CELL_SIZE}
+     *
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @return the depth of the tree
+     */
+    static int getTreeDepth(int width, int height) {
+        int size = Math.max(width, height);
+        int treeDepth = 0;
+        while (((MAX_CELL_SIZE << treeDepth) < size) && (treeDepth < MAX_DEPTH)) {
+            treeDepth++;
+        }
+        return treeDepth;
+    }
+
+    /**
+     * returns the number of cells along each side of the grid of leaves
+     *
+     * @return the cells per side
+     */
+    int getCellsPerSide() {
+        return 1 << depth;
+    }
+
+    /**
+     * returns the error of one leaf cell
+     *
+     * @param x
+     *            the column of the cell
+     * @param y
+     *            the row of the cell
+     * @return the error of the cell
+     */
+    long getCellScore(int x, int y) {
+        return nodeScores[getLevelOffset(depth) + (y << depth) + x];
+    }
+
+    /**
+     * replaces the error of one leaf cell, updating the nodes above it and the overall score
+     *
+     * @param x
+     *            the column of the cell
+     * @param y
+     *            the row of the cell
+     * @param score
+     *            the error of the cell
+     */
+    void setCellScore(int x, int y, long score) {
+        addCellScore(x, y, score - getCellScore(x, y));
+    }
+
+    /**
+     * adds to the error of one leaf cell, updating the nodes above it and the overall score
+     *
+     * @param x
+     *            the column of the cell
+     * @param y
+     *            the row of the cell
+     * @param delta
+     *            the change in error of the cell
+     */
+    void addCellScore(int x, int y, long delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        for (int level = depth; level >= 0; level--) {
+            nodeScores[getLevelOffset(level) + (y << level) + x] += delta;
+            x >>= 1;
+            y >>= 1;
+        }
+        overallScore += delta;
+    }
+
+    /**
+     * returns the error of a node of the tree
+     *
+     * @param level
+     *            the level of the node, 0 being the root and depth being the leaves
+     * @param x
+     *            the column of the node in its level
+     * @param y
+     *            the row of the node in its level
+     * @return the error of the node, the sum of the cells below it
+     */
+    long getNodeScore(int level, int x, int y) {
+        return nodeScores[getLevelOffset(level) + (y << level) + x];
+    }
 
-        long divider = NUM_DIVISIONS * NUM_DIVISIONS;
-        long gridScore = overallScore / divider;
+    /**
+     * picks a leaf cell at random, in proportion to its error, by walking down the tree from the root and choosing each
+     * child in proportion to its share of its parent's error
+     *
+     * @param random
+     *            the source of randomness
+     * @return the cell, as row * {@link #getCellsPerSide()} + column, or -1 if there is no error
+     */
+    int pickCell(Random random) {
+        if (overallScore <= 0) {
+            return -1;
+        }
 
-        for (int y = 0; y < NUM_DIVISIONS; y++) {
-            for (int x = 0; x < NUM_DIVISIONS; x++) {
-                gridScores[x][y] = gridScore;
+        int x = 0;
+        int y = 0;
+        for (int level = 1; level <= depth; level++) {
+            long pick = (long) (random.nextDouble() * getNodeScore(level - 1, x, y));
+            x <<= 1;
+            y <<= 1;
+            int child = 0;
+            while (child < 3) {
+                long childScore = getNodeScore(level, x + (child & 1), y + (child >> 1));
+                if (pick < childScore) {
+                    break;
+                }
+                pick -= childScore;
+                child++;
             }
+            x += child & 1;
+            y += child >> 1;
         }
+        return (y << depth) + x;
+    }
+
+    private static int getLevelOffset(int level) {
+        // levels above hold 1 + 4 + 16 + ... nodes
+        return ((1 << (2 * level)) - 1) / 3;
     }
 
     /**
      * returns the sum of the square of pixel errors
-     * 
+     *
      * @return the delta between a generate image and the target
      */
     @Override
@@ -81,18 +256,26 @@ public class DefaultScore implements Score {
         try {
             clonedScore = (DefaultScore) super.clone();
         } catch (CloneNotSupportedException cnse) {
-            clonedScore = new DefaultScore();
+            clonedScore = new DefaultScore(depth);
             clonedScore.overallScore = overallScore;
         }
 
-        clonedScore.gridScores = new long[NUM_DIVISIONS][NUM_DIVISIONS];
-        for (int i = 0; i < NUM_DIVISIONS; i++) {
-            System.arraycopy(gridScores[i], 0, clonedScore.gridScores[i], 0, NUM_DIVISIONS);
-        }
+        clonedScore.nodeScores = nodeScores.clone();
+        clonedScore.scratch = false;
 
         return clonedScore;
     }
 
+    /**
+     * returns this score, or a copy of it if it is a scratch score
+     *
+     * @return a score that will not change
+     */
+    @Override
+    public DefaultScore freeze() {
+        return scratch ? clone() : this;
+    }
+
     /**
      * generates a hash code for this score
      *
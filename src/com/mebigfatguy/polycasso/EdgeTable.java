@@ -0,0 +1,259 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+ * the edges of one or more polygons, set up and stepped the way the Java2D span iterator does it. Each edge starts at the
+ * first horizontal pixel center it crosses, and carries an integer x plus a 31 bit error term that is bumped per scanline.
+ * Edges of several polygons can be held at once, so that a caller can walk an area row by row, drawing every polygon's
+ * spans for a row before moving on to the next. The tables are reused, and only grow when more edges are needed.
+ */
+class EdgeTable {
+
+    private static final int ERRSTEP_MAX = 0x7FFFFFFF;
+    private static final float NORMALIZE_OFFSET = 0.25f;
+    private static final int INITIAL_EDGES = 16;
+
+    private int[] edgeTop = new int[INITIAL_EDGES];
+    private int[] edgeBottom = new int[INITIAL_EDGES];
+    private int[] edgeX = new int[INITIAL_EDGES];
+    private int[] edgeError = new int[INITIAL_EDGES];
+    private int[] edgeBumpX = new int[INITIAL_EDGES];
+    private int[] edgeBumpError = new int[INITIAL_EDGES];
+    private int[] polygonStart = new int[INITIAL_EDGES + 1];
+    private int numEdges;
+    private int numPolygons;
+    private int maxPolygonEdges;
+    private int top;
+    private int bottom;
+
+    /**
+     * removes all polygons from the table
+     */
+    void clear() {
+        numEdges = 0;
+        numPolygons = 0;
+        maxPolygonEdges = 0;
+        top = Integer.MAX_VALUE;
+        bottom = Integer.MIN_VALUE;
+    }
+
+    /**
+     * adds the edges of a polygon that cross a band of rows. Edges that begin above the band are advanced to its first row,
+     * so that crossings can be collected starting at that row.
+     *
+     * @param polygon
+     *            the polygon whose edges to add
+     * @param firstRow
+     *            the first row of the band
+     * @param endRow
+     *            the row after the last of the band
+     * @return the index of the polygon in the table
+     */
+    int addPolygon(Polygon polygon, int firstRow, int endRow) {
+        int npoints = polygon.npoints;
+        ensureCapacity(numEdges + npoints, numPolygons + 1);
+
+        int start = numEdges;
+        polygonStart[numPolygons] = start;
+        if (npoints >= 3) {
+            int[] xpoints = polygon.xpoints;
+            int[] ypoints = polygon.ypoints;
+            for (int i = 0; i < npoints; i++) {
+                int next = (i + 1) % npoints;
+                addEdge(xpoints[i] + NORMALIZE_OFFSET, ypoints[i] + NORMALIZE_OFFSET, xpoints[next] + NORMALIZE_OFFSET, ypoints[next] + NORMALIZE_OFFSET, firstRow, endRow);
+            }
+        }
+
+        maxPolygonEdges = Math.max(maxPolygonEdges, numEdges - start);
+        polygonStart[++numPolygons] = numEdges;
+        return numPolygons - 1;
+    }
+
+    private void addEdge(float x0, float y0, float x1, float y1, int firstRow, int endRow) {
+        if (y0 > y1) {
+            float t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+        }
+
+        int edgeFirstRow = (int) Math.ceil(y0 - 0.5f);
+        int edgeEndRow = (int) Math.ceil(y1 - 0.5f);
+        if ((edgeFirstRow >= edgeEndRow) || (edgeFirstRow >= endRow) || (edgeEndRow <= firstRow)) {
+            return;
+        }
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float slope = dx / dy;
+        float yBump = (edgeFirstRow + 0.5f) - y0;
+        float startX = x0 + ((yBump * dx) / dy);
+        int x = (int) Math.ceil(startX - 0.5f);
+        int bumpX = (int) Math.floor(slope);
+        int bumpError = (int) ((slope - Math.floor(slope)) * ERRSTEP_MAX);
+        int error = (int) ((startX - (x - 0.5f)) * (double) ERRSTEP_MAX);
+
+        if (edgeFirstRow < firstRow) {
+            // stepping n rows adds n bumps to the error, and carries every time it passes 2^31
+            int rows = firstRow - edgeFirstRow;
+            long total = error + ((long) rows * bumpError);
+            x += (rows * bumpX) + (int) (total >>> 31);
+            error = (int) (total & ERRSTEP_MAX);
+            edgeFirstRow = firstRow;
+        }
+
+        edgeTop[numEdges] = edgeFirstRow;
+        edgeBottom[numEdges] = edgeEndRow;
+        edgeX[numEdges] = x;
+        edgeBumpX[numEdges] = bumpX;
+        edgeBumpError[numEdges] = bumpError;
+        edgeError[numEdges] = error;
+        numEdges++;
+
+        top = Math.min(top, edgeFirstRow);
+        bottom = Math.max(bottom, edgeEndRow);
+    }
+
+    /**
+     * gathers the sorted x positions of a polygon's edges that are active on a scanline, and steps those edges to the next
+     * scanline. Rows must be visited in increasing order, starting no earlier than the first row given when the polygon was
+     * added.
+     *
+     * @param polygon
+     *            the index of the polygon in the table
+     * @param y
+     *            the scanline
+     * @param crossings
+     *            the array to fill, which must be at least {@link #getMaxPolygonEdges()} long
+     * @return the number of crossings found
+     */
+    int collectCrossings(int polygon, int y, int[] crossings) {
+        int numCrossings = 0;
+        int end = polygonStart[polygon + 1];
+        for (int e = polygonStart[polygon]; e < end; e++) {
+            if ((y >= edgeTop[e]) && (y < edgeBottom[e])) {
+                int x = edgeX[e];
+
+                int insertPos = numCrossings++;
+                while ((insertPos > 0) && (crossings[insertPos - 1] > x)) {
+                    crossings[insertPos] = crossings[insertPos - 1];
+                    insertPos--;
+                }
+                crossings[insertPos] = x;
+
+                int error = edgeError[e] + edgeBumpError[e];
+                edgeError[e] = error & ERRSTEP_MAX;
+                edgeX[e] = (x + edgeBumpX[e]) - (error >> 31);
+            }
+        }
+
+        return numCrossings;
+    }
+
+    /**
+     * gathers the sorted x positions of a polygon's edges that are active on any scanline, without stepping the edges, so
+     * rows can be visited in any order, or skipped. Each edge is jumped from its first row straight to the scanline. This
+     * only works until {@link #collectCrossings} starts stepping the polygon's edges.
+     *
+     * @param polygon
+     *            the index of the polygon in the table
+     * @param y
+     *            the scanline
+     * @param crossings
+     *            the array to fill, which must be at least {@link #getMaxPolygonEdges()} long
+     * @return the number of crossings found
+     */
+    int crossingsAt(int polygon, int y, int[] crossings) {
+        int numCrossings = 0;
+        int end = polygonStart[polygon + 1];
+        for (int e = polygonStart[polygon]; e < end; e++) {
+            if ((y >= edgeTop[e]) && (y < edgeBottom[e])) {
+                int rows = y - edgeTop[e];
+                long total = edgeError[e] + ((long) rows * edgeBumpError[e]);
+                int x = edgeX[e] + (rows * edgeBumpX[e]) + (int) (total >>> 31);
+
+                int insertPos = numCrossings++;
+                while ((insertPos > 0) && (crossings[insertPos - 1] > x)) {
+                    crossings[insertPos] = crossings[insertPos - 1];
+                    insertPos--;
+                }
+                crossings[insertPos] = x;
+            }
+        }
+
+        return numCrossings;
+    }
+
+    /**
+     * returns whether there are any edges in the table
+     *
+     * @return if no polygon added any edges
+     */
+    boolean isEmpty() {
+        return numEdges == 0;
+    }
+
+    /**
+     * returns the first row any edge is active on
+     *
+     * @return the top row of all edges
+     */
+    int getTop() {
+        return top;
+    }
+
+    /**
+     * returns the row after the last any edge is active on
+     *
+     * @return the bottom row of all edges
+     */
+    int getBottom() {
+        return bottom;
+    }
+
+    /**
+     * returns the largest number of edges any one polygon has in the table, which bounds the number of crossings per row
+     *
+     * @return the edge count of the polygon with the most edges
+     */
+    int getMaxPolygonEdges() {
+        return maxPolygonEdges;
+    }
+
+    private void ensureCapacity(int edgeCapacity, int polygonCapacity) {
+        if (edgeTop.length < edgeCapacity) {
+            int capacity = Math.max(edgeCapacity, edgeTop.length * 2);
+            edgeTop = Arrays.copyOf(edgeTop, capacity);
+            edgeBottom = Arrays.copyOf(edgeBottom, capacity);
+            edgeX = Arrays.copyOf(edgeX, capacity);
+            edgeError = Arrays.copyOf(edgeError, capacity);
+            edgeBumpX = Arrays.copyOf(edgeBumpX, capacity);
+            edgeBumpError = Arrays.copyOf(edgeBumpError, capacity);
+        }
+        if (polygonStart.length <= polygonCapacity) {
+            polygonStart = Arrays.copyOf(polygonStart, Math.max(polygonCapacity + 1, polygonStart.length * 2));
+        }
+    }
+}
@@ -43,4 +43,19 @@ public interface Feedback {
      * @return the score of this generated image
      */
     Score calculateScore(BufferedImage testImage, Score sourceScore, Rectangle changedArea);
+    
+    /**
+     * calculates the score of a generated image against a target image, when the image it was
+     * generated from is known, so that only the pixels of the changed area need to be compared. Scoring
+     * may stop early once the score is sure to be no better than the bound, such as the elite cutoff
+     * 
+     * @param testImage the generated image to test
+     * @param parentImage the image this test image was generated from, or null if not known
+     * @param sourceScore the score of the parent test image from which this test image was generated
+     * @param changedArea the area of changed between the parent generated image and this one
+     * @param bound the score at or above which the generated image is rejected, or Double.MAX_VALUE to always score in full
+     * 
+     * @return the score of this generated image, or null if it was rejected
+     */
+    Score calculateScore(BufferedImage testImage, BufferedImage parentImage, Score sourceScore, Rectangle changedArea, double bound);
 }
@@ -28,8 +28,8 @@ public enum FileType {
 	 */
 	PNG(".png", PolycassoBundle.Key.PNGDescription) {
 		@Override
-		public Saver getSaver() {
-			return new PNGSaver();
+		public Saver getSaver(Settings settings) {
+			return new PNGSaver(settings.getPixelLayout());
 		}
 	},
 	/**
@@ -37,7 +37,7 @@ public enum FileType {
 	 */
 	SVG(".svg", PolycassoBundle.Key.SVGDescription) {
 		@Override
-		public Saver getSaver() {
+		public Saver getSaver(Settings settings) {
 			return new SVGSaver();
 		}
 	},
@@ -46,7 +46,7 @@ public enum FileType {
 	 */
 	Java(".java", PolycassoBundle.Key.JAVADescription) {
 		@Override
-		public Saver getSaver() {
+		public Saver getSaver(Settings settings) {
 			return new JavaSaver();
 		}
 	};
@@ -86,7 +86,8 @@ public enum FileType {
 	/**
 	 * the action to save the file
 	 * 
+	 * @param settings the settings describing how images are laid out
 	 * @return a saver object that will save the object in the appropriate foramt
 	 */
-	public abstract Saver getSaver();
+	public abstract Saver getSaver(Settings settings);
 }
@@ -0,0 +1,96 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * a small pool of full size frame buffers, used to hand best images to listeners without allocating a new image for each
+ * one. A frame is taken from the pool, filled and passed along in an {@link ImageGeneratedEvent}, and the listener gives
+ * it back with {@link ImageGeneratedEvent#release()} once it no longer shows it. Frames that are never given back are just
+ * garbage collected, and the pool allocates replacements as needed.
+ */
+public class FramePool {
+
+    private final Dimension imageSize;
+    private final PixelLayout pixelLayout;
+    private final int maxFrames;
+    private final Deque<BufferedImage> freeFrames = new ArrayDeque<>();
+    private int allocatedFrames;
+
+    /**
+     * creates an empty frame pool
+     *
+     * @param size
+     *            the size of the frames
+     * @param layout
+     *            the pixel layout of the frames
+     * @param maxFreeFrames
+     *            the most released frames to keep for reuse
+     */
+    public FramePool(Dimension size, PixelLayout layout, int maxFreeFrames) {
+        imageSize = size;
+        pixelLayout = layout;
+        maxFrames = maxFreeFrames;
+    }
+
+    /**
+     * takes a frame from the pool, allocating one if none are free. The contents of the frame are undefined.
+     *
+     * @return a frame for the caller to own until it is released
+     */
+    public BufferedImage acquire() {
+        synchronized (freeFrames) {
+            BufferedImage frame = freeFrames.pollFirst();
+            if (frame != null) {
+                return frame;
+            }
+            allocatedFrames++;
+        }
+        return pixelLayout.createImage(imageSize);
+    }
+
+    /**
+     * gives a frame back to the pool, after which the caller must no longer use it
+     *
+     * @param frame
+     *            the frame to give back
+     */
+    public void release(BufferedImage frame) {
+        synchronized (freeFrames) {
+            if (freeFrames.size() < maxFrames) {
+                freeFrames.addFirst(frame);
+            }
+        }
+    }
+
+    /**
+     * returns the number of frames this pool has had to allocate
+     *
+     * @return the number of allocated frames
+     */
+    public int getAllocatedFrames() {
+        synchronized (freeFrames) {
+            return allocatedFrames;
+        }
+    }
+}
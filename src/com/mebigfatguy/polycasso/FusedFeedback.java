@@ -0,0 +1,158 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * the scoring half of the fused render and score engine. Whole images are scored just as {@link DefaultFeedback} scores
+ * them, but a {@link FusedRenderer} hands over each row of a candidate's changed area as soon as the row is finished, while
+ * it is still in cache. The row's error is compared to the parent image's error at the same pixels, and the difference is
+ * added to the cells of a copy of the parent's score, which gives the same cell scores as rescoring the image from scratch.
+ */
+public class FusedFeedback implements Feedback {
+
+    private final DefaultFeedback imageFeedback = new DefaultFeedback();
+
+    /**
+     * caches information about the target image
+     *
+     * @param targetImage
+     *            the target image that will be the judge of test images
+     */
+    @Override
+    public void setTargetImage(BufferedImage targetImage) {
+        imageFeedback.setTargetImage(targetImage);
+    }
+
+    /**
+     * returns the summed-area tables of the target image, the same as {@link DefaultFeedback}
+     *
+     * @return the target's summed-area tables
+     */
+    SummedAreaTable getSummedAreaTable() {
+        return imageFeedback.getSummedAreaTable();
+    }
+
+    /**
+     * scores a completely drawn image, the same way as {@link DefaultFeedback}
+     *
+     * @param testImage
+     *            the image to score
+     * @param sourceScore
+     *            the score of the generated image from which this image was created
+     * @param changedArea
+     *            the area of changed between the parent generated image and this one
+     *
+     * @return a score that represents its closeness to ideal
+     */
+    @Override
+    public Score calculateScore(BufferedImage testImage, Score sourceScore, Rectangle changedArea) {
+        return imageFeedback.calculateScore(testImage, sourceScore, changedArea);
+    }
+
+    /**
+     * scores a completely drawn image against its parent, the same way as {@link DefaultFeedback}
+     *
+     * @param testImage
+     *            the image to score
+     * @param parentImage
+     *            the image from which this image was created
+     * @param sourceScore
+     *            the score of the generated image from which this image was created
+     * @param changedArea
+     *            the area of changed between the parent generated image and this one
+     * @param bound
+     *            the score at or above which the test image is of no interest
+     *
+     * @return a score that represents its closeness to ideal, or null if it is sure to be at least the bound
+     */
+    @Override
+    public Score calculateScore(BufferedImage testImage, BufferedImage parentImage, Score sourceScore, Rectangle changedArea, double bound) {
+        return imageFeedback.calculateScore(testImage, parentImage, sourceScore, changedArea, bound);
+    }
+
+    /**
+     * returns the calling thread's scratch score, set to the value of a parent's score, the same as {@link DefaultFeedback}
+     *
+     * @param source
+     *            the parent's score
+     * @return the scratch score
+     */
+    DefaultScore getScratchScore(DefaultScore source) {
+        return imageFeedback.getScratchScore(source);
+    }
+
+    /**
+     * returns the parent's error over the cells that overlap an area, which is at least its error over the area, so that a
+     * candidate's score can be bounded while its rows are still being drawn
+     *
+     * @param parentScore
+     *            the score of the parent image
+     * @param area
+     *            the area of the image
+     * @return the error of the cells over the area
+     */
+    long getCellsError(DefaultScore parentScore, Rectangle area) {
+        return imageFeedback.getCellsError(parentScore, area);
+    }
+
+    /**
+     * adds the change in error of one finished row of a candidate to its score
+     *
+     * @param testBuffer
+     *            the ABGR bytes of the candidate image
+     * @param parentBuffer
+     *            the ABGR bytes of the parent image the candidate was improved from
+     * @param y
+     *            the row
+     * @param left
+     *            the first column that changed
+     * @param right
+     *            the column after the last that changed
+     * @param score
+     *            the candidate's score, which starts as a copy of the parent's score
+     * @return the parent's error on the part of the row
+     */
+    long scoreRow(byte[] testBuffer, byte[] parentBuffer, int y, int left, int right, DefaultScore score) {
+        return imageFeedback.addRowDeltas(testBuffer, parentBuffer, y, left, right, score);
+    }
+
+    /**
+     * adds the change in error of one finished row of a packed RGB candidate to its score
+     *
+     * @param testPixels
+     *            the RGB ints of the candidate image
+     * @param parentPixels
+     *            the RGB ints of the parent image the candidate was improved from
+     * @param y
+     *            the row
+     * @param left
+     *            the first column that changed
+     * @param right
+     *            the column after the last that changed
+     * @param score
+     *            the candidate's score, which starts as a copy of the parent's score
+     * @return the parent's error on the part of the row
+     */
+    long scoreRow(int[] testPixels, int[] parentPixels, int y, int left, int right, DefaultScore score) {
+        return imageFeedback.addRowDeltas(testPixels, parentPixels, y, left, right, score);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * the drawing half of the fused render and score engine. Rather than drawing the changed area one polygon at a time and
+ * then scoring it, the edges of every polygon overlapping the area are set up at once, and the area is walked a row at a
+ * time: the row is cleared to black, every polygon's spans on it are blended in z-order, and the finished row
+ * is handed to a {@link FusedFeedback} to be scored while it is still in cache. With a {@link CandidateScreen}, a sample of
+ * the rows is drawn and scored first, to drop hopeless candidates early. Whole images are drawn just as a
+ * {@link ScanlineRenderer} draws them.
+ */
+public class FusedRenderer extends ScanlineRenderer {
+
+    private final EdgeTable areaEdges = new EdgeTable();
+    private int[] areaCrossings = new int[0];
+    private int[] polygonColors = new int[0];
+    private int[] polygonAlphas = new int[0];
+
+    /**
+     * redraws the changed area of a candidate on top of its parent's image, and scores it against the parent's score
+     *
+     * @param image
+     *            the image to draw on, which must already hold the parent image outside of the area
+     * @param polygonData
+     *            the candidate's polygons
+     * @param parentImage
+     *            the image of the parent the candidate was improved from
+     * @param parentScore
+     *            the score of the parent image
+     * @param area
+     *            the area of the image that changed, which must lie within the image
+     * @param feedback
+     *            the feedback used to score the rows
+     * @return the score of the candidate
+     */
+    public Score renderAndScore(BufferedImage image, List<PolygonData> polygonData, BufferedImage parentImage, Score parentScore, Rectangle area,
+            FusedFeedback feedback) {
+        return renderAndScore(image, polygonData, parentImage, parentScore, area, feedback, null, Double.MAX_VALUE);
+    }
+
+    /**
+     * redraws the changed area of a candidate on top of its parent's image, and scores it against the parent's score. If a
+     * screen is given, every few rows of the area are drawn and scored first, and the candidate is dropped if the screen
+     * rejects it, leaving the image partly drawn. Otherwise the remaining rows are drawn, so a screened candidate that is
+     * kept costs little more than drawing it in one pass. Either way a candidate is dropped as soon as its score is sure to
+     * reach the cutoff, even if the rest of the area matched the target exactly.
+     *
+     * @param image
+     *            the image to draw on, which must already hold the parent image outside of the area
+     * @param polygonData
+     *            the candidate's polygons
+     * @param parentImage
+     *            the image of the parent the candidate was improved from
+     * @param parentScore
+     *            the score of the parent image
+     * @param area
+     *            the area of the image that changed, which must lie within the image
+     * @param feedback
+     *            the feedback used to score the rows
+     * @param screen
+     *            the screen to check the candidate with first, or null to always score in full
+     * @param cutoff
+     *            the score the candidate must beat to be kept
+     * @return the score of the candidate, which is the feedback's scratch score for this thread, or null if it was dropped
+     */
+    public Score renderAndScore(BufferedImage image, List<PolygonData> polygonData, BufferedImage parentImage, Score parentScore, Rectangle area,
+            FusedFeedback feedback, CandidateScreen screen, double cutoff) {
+        Object buffer = PixelLayout.getPixels(image);
+        Object parentBuffer = PixelLayout.getPixels(parentImage);
+        int[] intBuffer = (buffer instanceof int[]) ? (int[]) buffer : null;
+        byte[] byteBuffer = (intBuffer == null) ? (byte[]) buffer : null;
+        int width = image.getWidth();
+        int left = area.x;
+        int top = area.y;
+        int right = area.x + area.width;
+        int bottom = area.y + area.height;
+
+        int numPolygons = buildAreaEdges(polygonData, left, top, right, bottom);
+
+        DefaultScore score = feedback.getScratchScore((DefaultScore) parentScore);
+        boolean bounded = cutoff < Double.MAX_VALUE;
+        // an upper bound on the parent's error still to be replaced, which stays one as the rows' own errors are taken off
+        long parentErrorLeft = bounded ? feedback.getCellsError((DefaultScore) parentScore, area) : 0L;
+        if ((screen == null) || (screen.getRowStep() <= 1) || (area.height <= 1)) {
+            for (int y = top; y < bottom; y++) {
+                parentErrorLeft -= drawAndScoreRow(intBuffer, byteBuffer, parentBuffer, width, y, left, right, numPolygons, true, feedback, score);
+                if (bounded && isBeyond(score, parentErrorLeft, cutoff)) {
+                    return null;
+                }
+            }
+            return isBeyond(score, 0L, cutoff) ? null : score;
+        }
+
+        // draw and score the sampled rows, and estimate the change over the whole area from them
+        int rowStep = screen.getRowStep();
+        int firstSample = top + Math.min(rowStep / 2, area.height - 1);
+        int samples = 0;
+        for (int y = firstSample; y < bottom; y += rowStep) {
+            parentErrorLeft -= drawAndScoreRow(intBuffer, byteBuffer, parentBuffer, width, y, left, right, numPolygons, false, feedback, score);
+            samples++;
+        }
+
+        long estimatedChange = ((score.getDelta() - parentScore.getDelta()) * area.height) / samples;
+        boolean audit = false;
+        if (screen.rejects(parentScore.getDelta(), estimatedChange, cutoff)) {
+            if (!screen.shouldAudit()) {
+                return null;
+            }
+            audit = true;
+        }
+
+        for (int y = top; y < bottom; y++) {
+            if ((y < firstSample) || (((y - firstSample) % rowStep) != 0)) {
+                parentErrorLeft -= drawAndScoreRow(intBuffer, byteBuffer, parentBuffer, width, y, left, right, numPolygons, false, feedback, score);
+                if (bounded && !audit && isBeyond(score, parentErrorLeft, cutoff)) {
+                    return null;
+                }
+            }
+        }
+
+        if (audit) {
+            screen.recordAudit(score.getDelta(), cutoff);
+            return score;
+        }
+        // the cells' error outside the area is still counted as left, so the finished score is checked on its own
+        return isBeyond(score, 0L, cutoff) ? null : score;
+    }
+
+    /**
+     * returns whether a partly scored candidate is sure to reach the cutoff, which is when its score would reach it even
+     * if the rows still to be drawn matched the target exactly
+     */
+    private static boolean isBeyond(DefaultScore score, long parentErrorLeft, double cutoff) {
+        return (score.getDelta() - parentErrorLeft) >= cutoff;
+    }
+
+    /**
+     * draws one row of the area and adds its change in error to the score
+     *
+     * @return the parent's error on the row
+     */
+    private long drawAndScoreRow(int[] intBuffer, byte[] byteBuffer, Object parentBuffer, int width, int y, int left, int right, int numPolygons,
+            boolean sequential, FusedFeedback feedback, DefaultScore score) {
+        drawRow(intBuffer, byteBuffer, width, y, left, right, numPolygons, sequential);
+        if (intBuffer != null) {
+            return feedback.scoreRow(intBuffer, (int[]) parentBuffer, y, left, right, score);
+        }
+        return feedback.scoreRow(byteBuffer, (byte[]) parentBuffer, y, left, right, score);
+    }
+
+    /**
+     * clears one row of the area to black, and blends every polygon's spans on it in z-order
+     *
+     * @param sequential
+     *            whether rows are being visited one after another from the top of the area, so edges can be stepped,
+     *            rather than jumped to the row
+     */
+    private void drawRow(int[] intBuffer, byte[] byteBuffer, int width, int y, int left, int right, int numPolygons, boolean sequential) {
+        int rowStart = y * width;
+        clear((intBuffer != null) ? intBuffer : byteBuffer, width, left, y, right, y + 1);
+
+        for (int p = 0; p < numPolygons; p++) {
+            int numCrossings = sequential ? areaEdges.collectCrossings(p, y, areaCrossings) : areaEdges.crossingsAt(p, y, areaCrossings);
+            if (numCrossings > 1) {
+                if (intBuffer != null) {
+                    fillSpans(intBuffer, rowStart, areaCrossings, numCrossings, left, right, polygonColors[p], polygonAlphas[p]);
+                } else {
+                    fillSpans(byteBuffer, rowStart, areaCrossings, numCrossings, left, right, polygonColors[p], polygonAlphas[p]);
+                }
+            }
+        }
+    }
+
+    /**
+     * sets up the edges of all the visible polygons that overlap the area, in z-order
+     *
+     * @return the number of polygons in the edge table
+     */
+    private int buildAreaEdges(List<PolygonData> polygonData, int left, int top, int right, int bottom) {
+        areaEdges.clear();
+        if (polygonColors.length < polygonData.size()) {
+            polygonColors = new int[polygonData.size()];
+            polygonAlphas = new int[polygonData.size()];
+        }
+
+        int numPolygons = 0;
+        for (PolygonData pd : polygonData) {
+            int extraAlpha = getExtraAlpha(pd);
+            if ((extraAlpha > 0) && overlaps(pd.getPolygon(), left, top, right, bottom)) {
+                int p = areaEdges.addPolygon(pd.getPolygon(), top, bottom);
+                polygonColors[p] = getBlendColor(pd.getColor(), extraAlpha);
+                polygonAlphas[p] = extraAlpha;
+                numPolygons++;
+            }
+        }
+
+        if (areaCrossings.length < areaEdges.getMaxPolygonEdges()) {
+            areaCrossings = new int[areaEdges.getMaxPolygonEdges()];
+        }
+        return numPolygons;
+    }
+}
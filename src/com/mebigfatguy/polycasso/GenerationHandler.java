@@ -21,26 +21,49 @@ package com.mebigfatguy.polycasso;
 import java.awt.Dimension;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * class that maintains the set of polygon data for this generation of images
+ * class that maintains the set of polygon data for this generation of images. The generation is an immutable array of
+ * members, best first, that is replaced as a whole whenever a member is added, so workers picking parents read it without
+ * locking, and workers adding members, singly or in batches, only retry if another worker added some at the same moment. Turning over to the next
+ * generation, once the generation is full, is handed to a turnover executor, so that with an executor of its own, the worker that filled the generation
+ * goes straight back to making candidates. Members added while a turnover is pending are held back, and merged into the next generation once it is
+ * swapped in, so the full generation doesn't keep growing, nor keep the turnover from swapping it out.
  */
 public class GenerationHandler implements Serializable {
 
     private static final long serialVersionUID = 2375492293685052783L;
 
-    private List<GenerationMember> generation;
+    private final AtomicReference<GenerationMember[]> generation;
     private final Random random;
     private final Settings settings;
-    private int generationNumber;
+    private final ScoreCache scoreCache;
+    private volatile int generationNumber;
     private double annealingValue;
-    private GenerationMember bestMember;
-    private double eliteCutOff;
-    private int generationBests;
-    private int generationElites;
+    private final AtomicReference<GenerationMember> bestMember;
+    private volatile double eliteCutOff;
+    private volatile double scoreBound;
+    private final LongAdder generationBests;
+    private final LongAdder generationElites;
+    private final LongAdder generationCandidates;
+    private final LongAdder publishRetries;
+    private final transient Executor turnoverExecutor;
+    private final AtomicBoolean turnoverPending;
+    private final ConcurrentLinkedQueue<GenerationMember> heldMembers;
+    private long generationStartTime;
+    private long plateauScore;
+    private int plateauStartGeneration;
+    private volatile int stalledGenerations;
 
     /**
      * constructs a handler for managing successive generations of image samples
@@ -51,15 +74,42 @@ public class GenerationHandler implements Serializable {
      *            the size of the target image
      */
     public GenerationHandler(Settings confSettings, Dimension imageSize) {
-        random = new Random();
+        this(confSettings, imageSize, null, SeededRandom.create(confSettings.getRandomSeed()));
+    }
+
+    /**
+     * constructs a handler for managing successive generations of image samples, that turns each generation over to the next on an executor
+     *
+     * @param confSettings
+     *            settings to use for generation and elite size
+     * @param imageSize
+     *            the size of the target image
+     * @param turnover
+     *            the executor to turn generations over on, or null to turn them over on the worker that fills them
+     * @param annealingRandom
+     *            the source of randomness for choosing the members swapped into the elite by annealing, which only one turnover at a time uses
+     */
+    public GenerationHandler(Settings confSettings, Dimension imageSize, Executor turnover, Random annealingRandom) {
+        random = annealingRandom;
         generationNumber = 0;
         settings = confSettings;
-        bestMember = new GenerationMember(DefaultScore.MAX_SCORE, new PolygonData[0]);
+        scoreCache = new ScoreCache(settings.getScoreCacheSize());
+        bestMember = new AtomicReference<>(new GenerationMember(DefaultScore.MAX_SCORE, new PolygonData[0]));
         eliteCutOff = Long.MAX_VALUE;
-        generation = new ArrayList<>(settings.getGenerationSize() + 10);
+        scoreBound = Double.MAX_VALUE;
+        generation = new AtomicReference<>(new GenerationMember[0]);
         annealingValue = settings.getStartTemperature() * settings.getStartTemperature() * imageSize.height * imageSize.width;
-        generationBests = 0;
-        generationElites = 0;
+        generationBests = new LongAdder();
+        generationElites = new LongAdder();
+        generationCandidates = new LongAdder();
+        publishRetries = new LongAdder();
+        turnoverExecutor = turnover;
+        turnoverPending = new AtomicBoolean();
+        heldMembers = new ConcurrentLinkedQueue<>();
+        generationStartTime = System.nanoTime();
+        plateauScore = Long.MAX_VALUE;
+        plateauStartGeneration = 0;
+        stalledGenerations = 0;
     }
 
     /**
@@ -74,47 +124,154 @@ public class GenerationHandler implements Serializable {
      * @return whether this is the best polygon set so far
      */
     public ImprovementResult addPolygonData(Score score, PolygonData... polygonData) {
-        GenerationMember newMember = new GenerationMember(score, polygonData);
-        synchronized (generation) {
-            generation.add(newMember);
-            if (generation.size() >= settings.getGenerationSize()) {
-                processGeneration();
-            } else {
-                Collections.sort(generation);
+        return addPolygonData(score, new Genome(polygonData));
+    }
+
+    /**
+     * add a candidate to this generation with a given score, giving it a genome of its own only now that it has been accepted
+     *
+     * @param score
+     *            the deviation from perfection this set calculates
+     *
+     * @param candidate
+     *            the parent's polygons and the change made to them
+     *
+     * @return whether this is the best polygon set so far
+     */
+    public ImprovementResult addPolygonData(Score score, MutatedGenome candidate) {
+        return addPolygonData(score, candidate.materialize());
+    }
+
+    /**
+     * add a candidate to this generation with a given score, as above, keeping the spatial index of its polygons that was
+     * kept up to date while it was improved
+     *
+     * @param score
+     *            the deviation from perfection this set calculates
+     *
+     * @param candidate
+     *            the parent's polygons and the change made to them
+     *
+     * @param polygonIndex
+     *            the spatial index of the candidate's polygons, which must not be changed afterwards
+     *
+     * @return whether this is the best polygon set so far
+     */
+    public ImprovementResult addPolygonData(Score score, MutatedGenome candidate, PolygonIndex polygonIndex) {
+        return addMembers(new GenerationMember[] { new GenerationMember(score.freeze(), candidate.materialize(), polygonIndex) });
+    }
+
+    /**
+     * add a sample genome to this generation with a given score. The genome is frozen, and so can't be changed afterwards.
+     *
+     * @param score
+     *            the deviation from perfection this set calculates
+     *
+     * @param genome
+     *            the polygons that draw the image
+     *
+     * @return whether this is the best polygon set so far
+     */
+    public ImprovementResult addPolygonData(Score score, Genome genome) {
+        return addMembers(new GenerationMember[] { new GenerationMember(score.freeze(), genome) });
+    }
+
+    /**
+     * add a batch of scored members to this generation, merging them all in at once, so that a worker that has been
+     * buffering members only publishes a new generation once for the lot. Only the best of the batch is checked against
+     * the best member.
+     *
+     * @param batch
+     *            the members to add, whose scores must be frozen
+     *
+     * @return whether the best of the batch is the best polygon set so far
+     */
+    public ImprovementResult addPolygonData(Collection<GenerationMember> batch) {
+        if (batch.isEmpty()) {
+            return ImprovementResult.FAIL;
+        }
+
+        GenerationMember[] members = batch.toArray(new GenerationMember[batch.size()]);
+        Arrays.sort(members);
+        return addMembers(members);
+    }
+
+    /**
+     * returns how many times in all a new generation could not be published at the first attempt, because another worker
+     * published one first, which is how contended this handler is
+     *
+     * @return the number of retries
+     */
+    long getPublishRetries() {
+        return publishRetries.sum();
+    }
+
+    private ImprovementResult addMembers(GenerationMember[] members) {
+        for (GenerationMember member : members) {
+            scoreCache.put(member.getGenomeHash(), member.getScore());
+        }
+        generationCandidates.add(members.length);
+
+        if (turnoverPending.get()) {
+            Collections.addAll(heldMembers, members);
+            // the turnover may have finished, and released the held members, before these were added
+            if (!turnoverPending.get()) {
+                releaseHeldMembers();
             }
-            if (score.getDelta() < bestMember.getScore().getDelta()) {
-                bestMember = newMember;
-                generationBests++;
-                return ImprovementResult.BEST;
-            } else if (score.getDelta() < eliteCutOff) {
-                generationElites++;
-                return ImprovementResult.ELITE;
+        } else {
+            publish(members);
+        }
+
+        ImprovementResult result = ImprovementResult.BEST;
+        long bestDelta = members[0].getScore().getDelta();
+        GenerationMember best;
+        do {
+            best = bestMember.get();
+            if (bestDelta >= best.getScore().getDelta()) {
+                result = (bestDelta < eliteCutOff) ? ImprovementResult.ELITE : ImprovementResult.FAIL;
+                break;
             }
+        } while (!bestMember.compareAndSet(best, members[0]));
+
+        int elites = 0;
+        for (int i = (result == ImprovementResult.BEST) ? 1 : 0; i < members.length; i++) {
+            if (members[i].getScore().getDelta() < eliteCutOff) {
+                elites++;
+            }
+        }
+        if (result == ImprovementResult.BEST) {
+            generationBests.increment();
         }
-        return ImprovementResult.FAIL;
+        generationElites.add(elites);
+        return result;
     }
 
     /**
-     * pick a random member either from the general pool or elite pool skew the results towards the elite
+     * pick a random member either from the general pool or elite pool skew the results towards the elite, with the caller's own source of randomness
      *
      * @param elite
      *            whether to pick from the elite pool or not
+     * @param callerRandom
+     *            the caller's source of randomness
      * @return a random member
      */
-    public GenerationMember getRandomMember(boolean elite) {
-        synchronized (generation) {
-            int size = elite ? (settings.getEliteSize() % generation.size()) : generation.size();
+    public GenerationMember getRandomMember(boolean elite, Random callerRandom) {
+        GenerationMember[] members = generation.get();
+        if (members.length == 0) {
+            return null;
+        }
 
-            if (size == 0) {
-                return null;
-            }
+        int size = elite ? (settings.getEliteSize() % members.length) : members.length;
+
+        if (size == 0) {
+            return null;
+        }
 
-            int r = random.nextInt(size);
+        int r = callerRandom.nextInt(size);
 
-            int idx = (int) (r * ((double) r / (double) size));
+        int idx = (int) (r * ((double) r / (double) size));
 
-            return generation.get(idx);
-        }
+        return members[idx];
     }
 
     /**
@@ -123,56 +280,268 @@ public class GenerationHandler implements Serializable {
      * @return the best polygon set
      */
     public GenerationMember getBestMember() {
-        synchronized (generation) {
-            return bestMember;
-        }
+        return bestMember.get();
     }
 
-    private void processGeneration() {
-        int eliteSize = settings.getEliteSize();
+    /**
+     * returns the score a new member has to beat to make it into the elite
+     *
+     * @return the elite cutoff score
+     */
+    public double getEliteCutOff() {
+        return eliteCutOff;
+    }
+
+    /**
+     * returns the score at or above which a new member can't make it into the next generation, either as one of the elite,
+     * or by annealing, which only swaps in members less than the annealing value worse than an elite member. Candidates
+     * scoring this or worse can be dropped without being scored in full, and so never become parents before the turnover
+     * either. Until the first turnover there is no bound.
+     *
+     * @return the score bound
+     */
+    public double getScoreBound() {
+        return scoreBound;
+    }
+
+    /**
+     * returns a snapshot of the members of the current generation, best first
+     *
+     * @return the generation members
+     */
+    public GenerationMember[] getMembers() {
+        return generation.get().clone();
+    }
+
+    /**
+     * returns the cache of the scores of the genomes added to this handler, by which candidates that duplicate one already
+     * evaluated can be skipped
+     *
+     * @return the score cache
+     */
+    ScoreCache getScoreCache() {
+        return scoreCache;
+    }
+
+    /**
+     * returns how many generations this handler has turned over
+     *
+     * @return the generation number
+     */
+    int getGenerationNumber() {
+        return generationNumber;
+    }
 
-        Collections.<GenerationMember> sort(generation);
-        int sz = generation.size();
+    /**
+     * returns how many generations have passed since the best score last improved by the plateau improvement fraction
+     *
+     * @return the number of generations without significant improvement
+     */
+    public int getStalledGenerations() {
+        return stalledGenerations;
+    }
 
-        List<GenerationMember> nextGeneration = new ArrayList<>(settings.getGenerationSize() + 10);
-        for (int i = 0; i < eliteSize; i++) {
-            nextGeneration.add(generation.get(i));
+    /**
+     * merges members, in order, into the generation, and has it turned over if that fills it
+     */
+    private void publish(GenerationMember[] members) {
+        GenerationMember[] current = generation.get();
+        GenerationMember[] next = merge(current, members);
+        while (!generation.compareAndSet(current, next)) {
+            publishRetries.increment();
+            current = generation.get();
+            next = merge(current, members);
         }
 
-        if ((annealingValue > 0.01) && settings.isUseAnnealing()) {
-            int annealingReplacements = 0;
+        if (next.length >= settings.getGenerationSize()) {
+            scheduleTurnover();
+        }
+    }
 
-            /* always keep the best, so start at 1 */
-            for (int i = 1; i < eliteSize; i++) {
-                int candidateIndex = random.nextInt(sz - eliteSize) + eliteSize;
-                GenerationMember candidate = generation.get(candidateIndex);
-                GenerationMember elite = generation.get(i);
-                long delta = candidate.getScore().getDelta() - elite.getScore().getDelta();
-                if (delta < annealingValue) {
-                    nextGeneration.set(i, candidate);
-                    if (Polycasso.DEBUG) {
-                        annealingReplacements++;
-                    }
+    /**
+     * merges the members held back during a turnover into the generation
+     */
+    private void releaseHeldMembers() {
+        List<GenerationMember> held = new ArrayList<>();
+        GenerationMember member;
+        while ((member = heldMembers.poll()) != null) {
+            held.add(member);
+        }
+
+        if (!held.isEmpty()) {
+            GenerationMember[] members = held.toArray(new GenerationMember[held.size()]);
+            Arrays.sort(members);
+            publish(members);
+        }
+    }
+
+    /**
+     * returns the members of a generation that are not in an earlier snapshot of it, in order. Between turnovers members
+     * are only merged in, so the snapshot's members appear in the generation in the same order.
+     */
+    private static GenerationMember[] addedSince(GenerationMember[] snapshot, GenerationMember[] members) {
+        GenerationMember[] added = new GenerationMember[members.length - snapshot.length];
+        int s = 0;
+        int a = 0;
+        for (GenerationMember member : members) {
+            if ((s < snapshot.length) && (member == snapshot[s])) {
+                s++;
+            } else {
+                added[a++] = member;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * returns a copy of a generation with members, themselves in order, merged in order, each after any members with the
+     * same score
+     */
+    private static GenerationMember[] merge(GenerationMember[] members, GenerationMember[] added) {
+        GenerationMember[] merged = new GenerationMember[members.length + added.length];
+        int from = 0;
+        int to = 0;
+        for (GenerationMember member : added) {
+            int low = from;
+            int high = members.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (members[mid].compareTo(member) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
                 }
             }
+            System.arraycopy(members, from, merged, to, low - from);
+            to += low - from;
+            from = low;
+            merged[to++] = member;
+        }
+        System.arraycopy(members, from, merged, to, members.length - from);
+        return merged;
+    }
 
-            if (Polycasso.DEBUG) {
-                System.out.println(
-                        "Generation " + generationNumber + " had " + annealingReplacements + " annealing replacements with annealing value: " + annealingValue);
+    /**
+     * has the full generation turned over, unless a turnover is already on its way
+     */
+    private void scheduleTurnover() {
+        if (!turnoverPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (turnoverExecutor == null) {
+            turnOver();
+        } else {
+            turnoverExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    turnOver();
+                }
+            });
+        }
+    }
+
+    private void turnOver() {
+        try {
+            processGeneration();
+        } finally {
+            turnoverPending.set(false);
+        }
+        releaseHeldMembers();
+
+        // members added while the turnover was pending didn't schedule one, and may have filled the new generation already
+        if (generation.get().length >= settings.getGenerationSize()) {
+            scheduleTurnover();
+        }
+    }
+
+    /**
+     * turns a full generation over to the next, keeping the elite. The next generation is chosen once, from a snapshot. The
+     * few members merged in by workers that started adding before the turnover was pending, and so aren't held back, are
+     * merged into it as well, until it can be swapped in. Only one turnover runs at a time, see {@link #scheduleTurnover()}.
+     */
+    private void processGeneration() {
+        int eliteSize = settings.getEliteSize();
+
+        GenerationMember[] snapshot = generation.get();
+        if (snapshot.length < settings.getGenerationSize()) {
+            // the held members released by the last turnover haven't filled the generation again
+            return;
+        }
+        GenerationMember[] selected = selectNextGeneration(snapshot);
+        double cutOff = selected[eliteSize - 1].getScore().getDelta();
+        int annealingReplacements = 0;
+        for (int i = 1; i < eliteSize; i++) {
+            if (selected[i] != snapshot[i]) {
+                annealingReplacements++;
             }
         }
+        // annealing may have put worse members among the elite, and the generation is kept in order
+        Arrays.sort(selected);
+
+        GenerationMember[] current = snapshot;
+        GenerationMember[] nextGeneration = selected;
+        while (!generation.compareAndSet(current, nextGeneration)) {
+            current = generation.get();
+            nextGeneration = merge(selected, addedSince(snapshot, current));
+        }
 
-        generation = nextGeneration;
+        if (Polycasso.DEBUG && (annealingValue > 0.01) && settings.isUseAnnealing()) {
+            System.out.println(
+                    "Generation " + generationNumber + " had " + annealingReplacements + " annealing replacements with annealing value: " + annealingValue);
+        }
+
+        eliteCutOff = cutOff;
 
-        eliteCutOff = generation.get(eliteSize - 1).getScore().getDelta();
+        long bestScore = nextGeneration[0].getScore().getDelta();
+        if (bestScore < (plateauScore * (1.0 - settings.getPlateauImprovement()))) {
+            plateauScore = bestScore;
+            plateauStartGeneration = generationNumber;
+        }
+        stalledGenerations = generationNumber - plateauStartGeneration;
 
+        long now = System.nanoTime();
+        long bests = generationBests.sumThenReset();
+        long elites = generationElites.sumThenReset();
+        long candidates = generationCandidates.sumThenReset();
         if (Polycasso.DEBUG) {
-            System.out.println("Generation " + generationNumber + " had " + generationBests + " bests and " + generationElites + " elites. Best Score: "
-                    + generation.get(0).getScore());
+            double candidatesPerSec = (candidates * 1000000000.0) / Math.max(1L, now - generationStartTime);
+            System.out.println("Generation " + generationNumber + " had " + bests + " bests and " + elites + " elites. Best Score: "
+                    + nextGeneration[0].getScore() + " (" + settings.getRendererType() + ": " + (long) candidatesPerSec + " candidates/sec)");
+            System.out.println(scoreCache);
         }
-        generationBests = 0;
-        generationElites = 0;
+        generationStartTime = now;
         generationNumber++;
         annealingValue *= (1.0 - settings.getCoolingRate());
+
+        // the members kept are all still there at the next turnover, so none of the elite then is worse than the worst of them
+        long worstKept = selected[eliteSize - 1].getScore().getDelta();
+        scoreBound = ((annealingValue > 0.01) && settings.isUseAnnealing()) ? (worstKept + annealingValue) : worstKept;
+    }
+
+    /**
+     * chooses the members of the next generation from a full generation, the elite, with some of them swapped for worse
+     * members by simulated annealing
+     */
+    private GenerationMember[] selectNextGeneration(GenerationMember[] current) {
+        int eliteSize = settings.getEliteSize();
+        int sz = current.length;
+
+        GenerationMember[] nextGeneration = Arrays.copyOf(current, eliteSize);
+
+        if ((annealingValue > 0.01) && settings.isUseAnnealing()) {
+            /* always keep the best, so start at 1 */
+            for (int i = 1; i < eliteSize; i++) {
+                int candidateIndex = random.nextInt(sz - eliteSize) + eliteSize;
+                GenerationMember candidate = current[candidateIndex];
+                GenerationMember elite = current[i];
+                long delta = candidate.getScore().getDelta() - elite.getScore().getDelta();
+                if (delta < annealingValue) {
+                    nextGeneration[i] = candidate;
+                }
+            }
+        }
+
+        return nextGeneration;
     }
 }
@@ -19,7 +19,6 @@
 package com.mebigfatguy.polycasso;
 
 import java.io.Serializable;
-import java.util.Arrays;
 
 /**
  * class that holds a sample set of polygons and it's score
@@ -29,11 +28,27 @@ public class GenerationMember implements Comparable<GenerationMember>, Serializa
     private static final long serialVersionUID = 3227390661297952844L;
 
     private final Score score;
-    private final PolygonData[] data;
+    private final Genome genome;
+    private transient volatile PolygonIndex polygonIndex;
+    private transient volatile boolean hasGenomeHash;
+    private transient long genomeHash;
 
     GenerationMember(Score polyScore, PolygonData... polyData) {
+        this(polyScore, new Genome(polyData));
+    }
+
+    GenerationMember(Score polyScore, Genome polyGenome) {
         score = polyScore;
-        data = polyData;
+        genome = polyGenome.freeze();
+    }
+
+    /**
+     * creates a member that keeps the spatial index its polygons were given as a candidate, so that it needn't be built
+     * again when the member becomes a parent. The index must not be changed afterwards.
+     */
+    GenerationMember(Score polyScore, Genome polyGenome, PolygonIndex index) {
+        this(polyScore, polyGenome);
+        polygonIndex = index;
     }
 
     /**
@@ -46,12 +61,54 @@ public class GenerationMember implements Comparable<GenerationMember>, Serializa
     }
 
     /**
-     * returns the polygon data for this member
+     * returns a copy of the polygon data for this member
      *
      * @return the polygon data
      */
     public PolygonData[] getData() {
-        return data;
+        return genome.toArray(new PolygonData[genome.size()]);
+    }
+
+    /**
+     * returns the polygons of this member, without copying them
+     *
+     * @return the frozen genome
+     */
+    Genome getGenome() {
+        return genome;
+    }
+
+    /**
+     * returns the spatial index of this member's polygons, if one has been built
+     *
+     * @return the polygon index, or null
+     */
+    PolygonIndex getPolygonIndex() {
+        return polygonIndex;
+    }
+
+    /**
+     * remembers the spatial index of this member's polygons, so that candidates improved from this member can copy it. The
+     * index must not be changed afterwards.
+     *
+     * @param index
+     *            the polygon index
+     */
+    void setPolygonIndex(PolygonIndex index) {
+        polygonIndex = index;
+    }
+
+    /**
+     * returns the {@link GenomeHash} of this member's polygons, working it out the first time it is needed
+     *
+     * @return the genome hash
+     */
+    long getGenomeHash() {
+        if (!hasGenomeHash) {
+            genomeHash = GenomeHash.of(genome);
+            hasGenomeHash = true;
+        }
+        return genomeHash;
     }
 
     @Override
@@ -63,7 +120,7 @@ public class GenerationMember implements Comparable<GenerationMember>, Serializa
             return -1;
         }
 
-        return data.length - o.data.length;
+        return genome.size() - o.genome.size();
     }
 
     @Override
@@ -81,6 +138,6 @@ public class GenerationMember implements Comparable<GenerationMember>, Serializa
 
     @Override
     public String toString() {
-        return "(" + score + ": " + Arrays.toString(data) + ")";
+        return "(" + score + ": " + genome + ")";
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * the polygons of one genome, in z-order, held in fixed size chunks. A genome can be copied from its parent's genome and
+ * then mutated. The copy shares the parent's chunks until it has to change them, so copying costs a reference per chunk,
+ * and a mutation that changes one polygon copies only that polygon's chunk. Once a genome is given to a
+ * {@link GenerationMember} it is frozen, and can't be changed again.
+ */
+public final class Genome extends AbstractList<PolygonData> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = -3305817264019736457L;
+
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private PolygonData[][] chunks;
+    private boolean[] chunkOwned;
+    private int size;
+    private boolean frozen;
+
+    /**
+     * creates an empty genome
+     */
+    public Genome() {
+        chunks = new PolygonData[0][];
+        chunkOwned = new boolean[0];
+    }
+
+    /**
+     * creates a genome of the given polygons
+     *
+     * @param polygonData
+     *            the polygons in z-order
+     */
+    public Genome(PolygonData... polygonData) {
+        size = polygonData.length;
+        chunks = new PolygonData[(size + CHUNK_MASK) >>> CHUNK_BITS][];
+        chunkOwned = new boolean[chunks.length];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = Arrays.copyOfRange(polygonData, c << CHUNK_BITS, (c + 1) << CHUNK_BITS);
+            chunkOwned[c] = true;
+        }
+    }
+
+    /**
+     * creates a copy of a genome, that shares the chunks of the original until they are changed
+     *
+     * @param parent
+     *            the genome to copy
+     */
+    public Genome(Genome parent) {
+        chunks = parent.chunks.clone();
+        chunkOwned = new boolean[chunks.length];
+        size = parent.size;
+        if (!parent.frozen) {
+            // the chunks are now shared, so the parent can't change them in place either. A frozen parent is never
+            // changed, and may be copied by many threads at once, so it is left untouched
+            Arrays.fill(parent.chunkOwned, false);
+        }
+    }
+
+    /**
+     * stops this genome from being changed again
+     *
+     * @return this genome
+     */
+    public Genome freeze() {
+        frozen = true;
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PolygonData get(int index) {
+        checkIndex(index, size);
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    @Override
+    public PolygonData set(int index, PolygonData pd) {
+        checkNotFrozen();
+        checkIndex(index, size);
+        PolygonData[] chunk = ownChunk(index >>> CHUNK_BITS);
+        PolygonData old = chunk[index & CHUNK_MASK];
+        chunk[index & CHUNK_MASK] = pd;
+        return old;
+    }
+
+    @Override
+    public void add(int index, PolygonData pd) {
+        checkNotFrozen();
+        checkIndex(index, size + 1);
+        if (size == (chunks.length << CHUNK_BITS)) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = new PolygonData[CHUNK_SIZE];
+            chunkOwned = Arrays.copyOf(chunkOwned, chunkOwned.length + 1);
+            chunkOwned[chunkOwned.length - 1] = true;
+        }
+
+        // shift the polygons from index on up one, carrying the last of each chunk over to the start of the next
+        PolygonData carry = pd;
+        int c = index >>> CHUNK_BITS;
+        int start = index & CHUNK_MASK;
+        int remaining = (size - index) + 1;
+        while (remaining > 0) {
+            PolygonData[] chunk = ownChunk(c);
+            int count = Math.min(CHUNK_SIZE - start, remaining);
+            PolygonData last = chunk[CHUNK_MASK];
+            System.arraycopy(chunk, start, chunk, start + 1, count - 1);
+            chunk[start] = carry;
+            carry = last;
+            remaining -= count;
+            c++;
+            start = 0;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public PolygonData remove(int index) {
+        checkNotFrozen();
+        checkIndex(index, size);
+        PolygonData old = get(index);
+
+        // shift the polygons above index down one, pulling the first of each chunk back to the end of the one before
+        int c = index >>> CHUNK_BITS;
+        int start = index & CHUNK_MASK;
+        int remaining = size - index;
+        while (remaining > 0) {
+            PolygonData[] chunk = ownChunk(c);
+            int count = Math.min(CHUNK_SIZE - start, remaining);
+            System.arraycopy(chunk, start + 1, chunk, start, count - 1);
+            chunk[(start + count) - 1] = (remaining > count) ? chunks[c + 1][0] : null;
+            remaining -= count;
+            c++;
+            start = 0;
+        }
+        size--;
+        modCount++;
+
+        int usedChunks = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        if (usedChunks < chunks.length) {
+            chunks = Arrays.copyOf(chunks, usedChunks);
+            chunkOwned = Arrays.copyOf(chunkOwned, usedChunks);
+        }
+        return old;
+    }
+
+    /**
+     * makes sure a chunk is not shared with another genome, before it is changed
+     */
+    private PolygonData[] ownChunk(int c) {
+        if (!chunkOwned[c]) {
+            chunks[c] = chunks[c].clone();
+            chunkOwned[c] = true;
+        }
+        return chunks[c];
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Genome is frozen");
+        }
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if ((index < 0) || (index >= limit)) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+    }
+}
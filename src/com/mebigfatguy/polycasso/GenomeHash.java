@@ -0,0 +1,82 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Polygon;
+import java.util.List;
+
+/**
+ * a 64 bit hash of a genome, the ordered list of polygons a member draws. Each polygon's hash is mixed with its position in
+ * the list, and the results are added up, so that replacing or appending one polygon updates the hash without visiting the
+ * others. Two genomes that draw the same polygons in the same order always have the same hash.
+ */
+final class GenomeHash {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private GenomeHash() {
+    }
+
+    /**
+     * returns the hash of a list of polygons
+     *
+     * @param polygons
+     *            the polygons in z-order
+     * @return the genome hash
+     */
+    static long of(List<PolygonData> polygons) {
+        long hash = 0L;
+        for (int i = 0; i < polygons.size(); i++) {
+            hash += term(polygons.get(i), i);
+        }
+        return hash;
+    }
+
+    /**
+     * returns what one polygon at a position adds to the hash of its genome
+     *
+     * @param pd
+     *            the polygon
+     * @param index
+     *            the position of the polygon in z-order
+     * @return the polygon's part of the genome hash
+     */
+    static long term(PolygonData pd, int index) {
+        return mix(polygonHash(pd) + ((index + 1) * GOLDEN_GAMMA));
+    }
+
+    private static long polygonHash(PolygonData pd) {
+        Polygon polygon = pd.getPolygon();
+        long hash = mix(((long) pd.getColor().getRGB() << 32) | (Float.floatToIntBits(pd.getAlpha()) & 0xFFFFFFFFL));
+        for (int i = 0; i < polygon.npoints; i++) {
+            hash = mix(hash + (((long) polygon.xpoints[i] << 32) | (polygon.ypoints[i] & 0xFFFFFFFFL)));
+        }
+        return hash;
+    }
+
+    /**
+     * scrambles the bits of a value, using the finalizer of SplitMix64
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
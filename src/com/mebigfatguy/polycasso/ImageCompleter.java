@@ -24,8 +24,6 @@ import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import java.awt.image.WritableRaster;
 
 /**
  * a class that transforms the current best polygon representation to the real image thru
@@ -54,7 +52,7 @@ public class ImageCompleter implements Runnable {
 		targetImage = image;
 		imageSize = size;
 		
-		srcImage = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
+		srcImage = PixelLayout.of(targetImage).createImage(imageSize);
 		Graphics2D g2d = (Graphics2D)srcImage.getGraphics();
 		try {
     		Composite srcOpaque = AlphaComposite.getInstance(AlphaComposite.SRC, 1.0f);
@@ -76,33 +74,21 @@ public class ImageCompleter implements Runnable {
 	@Override
 	public void run() {
 		try {
-			WritableRaster sRaster = srcImage.getRaster();
-			DataBufferByte sDBB = (DataBufferByte)sRaster.getDataBuffer();
-			byte[] sData = sDBB.getData();
-			
-			WritableRaster tRaster = targetImage.getRaster();
-			DataBufferByte tDBB = (DataBufferByte)tRaster.getDataBuffer();
-			byte[] tData = tDBB.getData();
+			Object sData = PixelLayout.getPixels(srcImage);
+			Object tData = PixelLayout.getPixels(targetImage);
 			
 			int transition = 0;
 			do {
 				Thread.sleep(TRANSITION_DELAY);
 				transition++;
 				
-				BufferedImage intermediateImage = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
-				WritableRaster iRaster=  intermediateImage.getRaster();
-				DataBufferByte iDBB = (DataBufferByte)iRaster.getDataBuffer();
-				byte[] iData = iDBB.getData();
+				BufferedImage intermediateImage = PixelLayout.of(srcImage).createImage(imageSize);
+				Object iData = PixelLayout.getPixels(intermediateImage);
 				
-				for (int i = 0; i < sData.length; ) {
-					iData[i++] = (byte)0xFF;
-					for (int c = 0; c < 3; c++) {
-						int sC = sData[i] & 0x00FF;
-						int tC = tData[i] & 0x00FF;
-						int iC = sC + (((tC - sC) * transition) / NUMTRANSITIONS);
-						iData[i] = (byte)iC;
-						++i;
-					}
+				if (iData instanceof int[]) {
+					blend((int[])sData, (int[])tData, (int[])iData, transition);
+				} else {
+					blend((byte[])sData, (byte[])tData, (byte[])iData, transition);
 				}
 				imageGenerator.fireImageGenerated(intermediateImage);
 
@@ -110,4 +96,32 @@ public class ImageCompleter implements Runnable {
 		} catch (InterruptedException ie) {
 		}
 	}
+	
+	private static void blend(byte[] sData, byte[] tData, byte[] iData, int transition) {
+		for (int i = 0; i < sData.length; ) {
+			iData[i++] = (byte)0xFF;
+			for (int c = 0; c < 3; c++) {
+				int sC = sData[i] & 0x00FF;
+				int tC = tData[i] & 0x00FF;
+				int iC = sC + (((tC - sC) * transition) / NUMTRANSITIONS);
+				iData[i] = (byte)iC;
+				++i;
+			}
+		}
+	}
+	
+	private static void blend(int[] sData, int[] tData, int[] iData, int transition) {
+		for (int i = 0; i < sData.length; i++) {
+			int sPixel = sData[i];
+			int tPixel = tData[i];
+			int iPixel = 0;
+			for (int shift = 0; shift < 24; shift += 8) {
+				int sC = (sPixel >> shift) & 0x00FF;
+				int tC = (tPixel >> shift) & 0x00FF;
+				int iC = sC + (((tC - sC) * transition) / NUMTRANSITIONS);
+				iPixel |= iC << shift;
+			}
+			iData[i] = iPixel;
+		}
+	}
 }
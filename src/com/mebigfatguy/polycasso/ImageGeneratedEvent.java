@@ -19,6 +19,7 @@
 package com.mebigfatguy.polycasso;
 
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.util.EventObject;
 
 /**
@@ -29,6 +30,7 @@ public class ImageGeneratedEvent extends EventObject {
 
 	private static final long serialVersionUID = -7067803452935840915L;
 	private transient Image bestImage;
+	private transient FramePool framePool;
 	
 	/**
 	 * creates the event object with the source of the event as well as the image
@@ -42,6 +44,19 @@ public class ImageGeneratedEvent extends EventObject {
 		bestImage = image;
 	}
 	
+	/**
+	 * creates the event object for an image that was taken from a frame pool, and should be
+	 * given back with {@link #release()} when the listener is done with it.
+	 * 
+	 * @param source the object that generated this event (an image generator)
+	 * @param image the best image found so far
+	 * @param pool the pool the image was taken from
+	 */
+	public ImageGeneratedEvent(Object source, BufferedImage image, FramePool pool) {
+		this(source, image);
+		framePool = pool;
+	}
+	
 	/**
 	 * retrieve the best image as described by this event
 	 * 
@@ -50,4 +65,16 @@ public class ImageGeneratedEvent extends EventObject {
 	public Image getImage() {
 		return bestImage;
 	}
+	
+	/**
+	 * gives the image back to the pool it came from, so it can be reused for a later event.
+	 * The image must not be used after this is called, and the listener that calls it must
+	 * be the only one holding on to the image. Does nothing for images not from a pool.
+	 */
+	public void release() {
+		if (framePool != null) {
+			framePool.release((BufferedImage) bestImage);
+			framePool = null;
+		}
+	}
 }
@@ -70,6 +70,11 @@ public enum ImprovementType {
 	 * adjust a component of the color of a random existing polygon
 	 */
 	ChangeColor,
+	/**
+	 * set the color of a random existing polygon to the one that best matches
+	 * the target under it, given its transparency and what is drawn beneath it
+	 */
+	OptimalColor,
 	/**
 	 * adjust the transparency of a random existing polygon
 	 */
@@ -42,13 +42,16 @@ public class ImprovementTypeStats {
 	}
 	
 	private Map<ImprovementType, Stats> typeStats = new EnumMap<ImprovementType, Stats>(ImprovementType.class);
-	private Random r = new Random();
+	private final Random r;
 	private int failureRun;
 	
 	/**
-	 * creates an initial state of statistics
+	 * creates an initial state of statistics, that picks improvement types with a given source of randomness
+	 * 
+	 * @param random the source of randomness
 	 */
-	public ImprovementTypeStats() {
+	public ImprovementTypeStats(Random random) {
+		r = random;
 		initStats();
 	}
 	
@@ -20,12 +20,9 @@ package com.mebigfatguy.polycasso;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -33,14 +30,26 @@ import java.util.Random;
  * as priorities which polygons have had success being transformed.
  */
 public class Improver {
+    private static final int BENEATH_SAMPLES = 16;
+    private static final int POINT_CHOICES = 4;
+
     private final Settings settings;
     private final GenerationHandler generationHandler;
     private final Dimension imageSize;
     private final Random r;
-    private List<PolygonData> polygons = null;
+    private MutatedGenome polygons = null;
+    private PolygonIndex polygonIndex;
     private Rectangle changedArea;
+    private int changedIndex;
     private GenerationMember changedMember;
+    private long genomeHash;
     private final ImprovementTypeStats stats;
+    private final SummedAreaTable targetSums;
+    private final ResidualSampler residuals;
+    private int[] belowPolygons = new int[0];
+    private int[] cellPolygons = new int[0];
+    private double[] cellWeights = new double[0];
+    private final Rectangle cellArea = new Rectangle();
 
     /**
      * create an improver using a specified image size
@@ -53,23 +62,45 @@ public class Improver {
      *            the size of the image
      */
     public Improver(Settings confSettings, GenerationHandler genHandler, Dimension size) {
+        this(confSettings, genHandler, size, null, null, SeededRandom.create(confSettings.getRandomSeed()));
+    }
+
+    /**
+     * create an improver using a specified image size, that can also set polygons to their best color for the target
+     *
+     * @param confSettings
+     *            the settings to be used
+     * @param genHandler
+     *            the generation handler
+     * @param size
+     *            the size of the image
+     * @param sums
+     *            the summed-area tables of the target image, or null if polygons shouldn't be given their best color
+     * @param residualSampler
+     *            the sampler of where the best image is furthest from the target, or null to place points uniformly
+     * @param random
+     *            the source of randomness, which only this improver uses
+     */
+    Improver(Settings confSettings, GenerationHandler genHandler, Dimension size, SummedAreaTable sums, ResidualSampler residualSampler, Random random) {
         settings = confSettings;
         generationHandler = genHandler;
         imageSize = size;
-        stats = new ImprovementTypeStats();
-        r = new Random();
+        targetSums = sums;
+        residuals = residualSampler;
+        r = random;
+        stats = new ImprovementTypeStats(r);
     }
 
     /**
-     * get the list of polygons usually after attempted to be improved
+     * get the list of polygons usually after attempted to be improved, as the parent's polygons and the change made to them
      *
      * @return the list of polygons
      */
-    public List<PolygonData> getData() {
+    public MutatedGenome getData() {
         if (polygons == null) {
-            return new ArrayList<>();
+            return new MutatedGenome(new Genome().freeze());
         }
-        return Collections.<PolygonData> unmodifiableList(polygons);
+        return polygons;
     }
 
     /**
@@ -90,21 +121,41 @@ public class Improver {
      * @return the improvement type used to alter the data
      */
     public ImprovementType improveRandomly() {
-        changedMember = generationHandler.getRandomMember(false);
+        ImprovementType type = applyRandomImprovement();
+        updateGenomeHash();
+        return type;
+    }
+
+    /**
+     * returns the {@link GenomeHash} of the polygons returned by {@link #getData()}
+     *
+     * @return the genome hash
+     */
+    long getGenomeHash() {
+        return genomeHash;
+    }
+
+    private ImprovementType applyRandomImprovement() {
+        changedMember = generationHandler.getRandomMember(false, r);
         if (changedMember != null) {
-            polygons = new ArrayList<>(Arrays.<PolygonData> asList(changedMember.getData().clone()));
+            polygons = new MutatedGenome(changedMember.getGenome());
+            polygonIndex = new PolygonIndex(getMemberIndex(changedMember));
         } else {
-            polygons = new ArrayList<>();
+            polygons = new MutatedGenome(new Genome().freeze());
+            polygonIndex = new PolygonIndex(imageSize);
         }
 
+        changedIndex = 0;
         ImprovementType type = (polygons.isEmpty()) ? ImprovementType.AddPolygon : stats.getRandomImprovementType();
 
         switch (type) {
             case AddPolygon: {
                 if (polygons.size() < settings.getMaxPolygons()) {
-                    PolygonData pd = PolygonData.randomPoly(imageSize, settings.getMaxPoints());
+                    PolygonData pd = newRandomPoly();
                     polygons.add(pd);
+                    polygonIndex.add(pd.getPolygon());
                     changedArea = pd.getPolygon().getBounds();
+                    changedIndex = polygons.size() - 1;
                 } else {
                     randomCompleteChange();
                     type = ImprovementType.CompleteChange;
@@ -115,15 +166,17 @@ public class Improver {
 
             case RemovePolygon: {
                 if (polygons.size() > 0) {
-                    int idx = r.nextInt(polygons.size());
+                    int idx = pickPolygon();
                     changedArea = polygons.get(idx).getPolygon().getBounds();
+                    changedIndex = idx;
                     polygons.remove(idx);
+                    polygonIndex.remove(idx);
                 }
             }
             break;
 
             case AddPoint: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -135,8 +188,24 @@ public class Improver {
                     int maxX = Math.max(maxMovement, Math.abs(polygon.xpoints[lastPt] - polygon.xpoints[insPos]));
                     int maxY = Math.max(maxMovement, Math.abs(polygon.ypoints[lastPt] - polygon.ypoints[insPos]));
 
-                    int x = r.nextInt(maxX) + Math.min(polygon.xpoints[lastPt], polygon.xpoints[insPos]);
-                    int y = r.nextInt(maxY) + Math.min(polygon.ypoints[lastPt], polygon.ypoints[insPos]);
+                    int minX = Math.min(polygon.xpoints[lastPt], polygon.xpoints[insPos]);
+                    int minY = Math.min(polygon.ypoints[lastPt], polygon.ypoints[insPos]);
+                    int x = r.nextInt(maxX) + minX;
+                    int y = r.nextInt(maxY) + minY;
+                    if (residuals != null) {
+                        // of a few points, take the one where the best image is worst
+                        long worst = residuals.getResidual(x, y);
+                        for (int i = 1; i < POINT_CHOICES; i++) {
+                            int choiceX = r.nextInt(maxX) + minX;
+                            int choiceY = r.nextInt(maxY) + minY;
+                            long residual = residuals.getResidual(choiceX, choiceY);
+                            if (residual > worst) {
+                                worst = residual;
+                                x = choiceX;
+                                y = choiceY;
+                            }
+                        }
+                    }
 
                     int numCopyPts = polygon.npoints - insPos - 1;
                     System.arraycopy(polygon.xpoints, insPos, polygon.xpoints, insPos + 1, numCopyPts);
@@ -146,6 +215,8 @@ public class Improver {
                     polygon.invalidate();
                     changedArea = changedArea.union(polygon.getBounds());
                     polygons.set(idx, pd);
+                    polygonIndex.set(idx, pd.getPolygon());
+                    changedIndex = idx;
 
                 } else {
                     randomCompleteChange();
@@ -156,7 +227,7 @@ public class Improver {
             break;
 
             case RemovePoint: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -170,6 +241,8 @@ public class Improver {
                     polygon.invalidate();
                     changedArea = changedArea.union(polygon.getBounds());
                     polygons.set(idx, pd);
+                    polygonIndex.set(idx, pd.getPolygon());
+                    changedIndex = idx;
                 } else {
                     randomCompleteChange();
                     type = ImprovementType.CompleteChange;
@@ -179,7 +252,7 @@ public class Improver {
             break;
 
             case MovePoint: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -195,11 +268,13 @@ public class Improver {
                 polygon.invalidate();
                 changedArea = changedArea.union(polygon.getBounds());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case RectifyPoint: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -214,14 +289,20 @@ public class Improver {
                 polygon.invalidate();
                 changedArea = changedArea.union(polygon.getBounds());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case ReorderPoly: {
                 if (polygons.size() > 2) {
-                    PolygonData pd = polygons.remove(r.nextInt(polygons.size()));
+                    int fromIdx = r.nextInt(polygons.size());
+                    PolygonData pd = polygons.get(fromIdx);
                     changedArea = pd.getPolygon().getBounds();
-                    polygons.add(r.nextInt(polygons.size()), pd);
+                    int toIdx = r.nextInt(polygons.size() - 1);
+                    polygons.move(fromIdx, toIdx);
+                    polygonIndex.move(fromIdx, toIdx, pd.getPolygon());
+                    changedIndex = Math.min(fromIdx, toIdx);
                 } else {
                     randomCompleteChange();
                     type = ImprovementType.CompleteChange;
@@ -231,7 +312,7 @@ public class Improver {
             break;
 
             case ShrinkPoly: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -248,11 +329,13 @@ public class Improver {
                 polygon.invalidate();
                 changedArea = changedArea.union(polygon.getBounds());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case EnlargePoly: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -270,11 +353,13 @@ public class Improver {
                 polygon.invalidate();
                 changedArea = changedArea.union(polygon.getBounds());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case ShiftPoly: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 Polygon polygon = pd.getPolygon();
                 changedArea = polygon.getBounds();
@@ -291,11 +376,13 @@ public class Improver {
                 polygon.invalidate();
                 changedArea = changedArea.union(polygon.getBounds());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case ChangeColor: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 changedArea = pd.getPolygon().getBounds();
                 Color color = pd.getColor();
@@ -329,70 +416,104 @@ public class Improver {
                         return ImprovementType.CompleteChange;
                 }
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
+            }
+            break;
+
+            case OptimalColor: {
+                int idx = pickPolygon();
+                PolygonData pd = polygons.get(idx).clone();
+                Color optimalColor = getOptimalColor(idx, pd);
+                if ((optimalColor != null) && !optimalColor.equals(pd.getColor())) {
+                    changedArea = pd.getPolygon().getBounds();
+                    pd.setColor(optimalColor);
+                    polygons.set(idx, pd);
+                    polygonIndex.set(idx, pd.getPolygon());
+                    changedIndex = idx;
+                } else {
+                    randomCompleteChange();
+                    type = ImprovementType.CompleteChange;
+                    typeWasSuccessful(ImprovementType.OptimalColor, false);
+                }
             }
             break;
 
             case White: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 changedArea = pd.getPolygon().getBounds();
                 pd.setColor(Color.WHITE);
                 pd.setAlpha(1);
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case Black: {
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 changedArea = pd.getPolygon().getBounds();
                 pd.setColor(Color.BLACK);
                 pd.setAlpha(1);
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             }
             break;
 
             case ChangeAlpha:
-                int idx = r.nextInt(polygons.size());
+                int idx = pickPolygon();
                 PolygonData pd = polygons.get(idx).clone();
                 changedArea = pd.getPolygon().getBounds();
                 pd.setAlpha(r.nextFloat());
                 polygons.set(idx, pd);
+                polygonIndex.set(idx, pd.getPolygon());
+                changedIndex = idx;
             break;
 
             case Breed: {
-                GenerationMember copyMember = generationHandler.getRandomMember(false);
-                if ((copyMember == null) || (copyMember.getData().length == 0)) {
+                GenerationMember copyMember = generationHandler.getRandomMember(false, r);
+                if ((copyMember == null) || copyMember.getGenome().isEmpty()) {
                     randomCompleteChange();
                 } else {
-                    PolygonData[] copyData = copyMember.getData();
-                    idx = r.nextInt(copyData.length);
+                    Genome copyData = copyMember.getGenome();
+                    idx = r.nextInt(copyData.size());
                     if (idx >= polygons.size()) {
-                        polygons.add(copyData[idx]);
-                        changedArea = copyData[idx].getPolygon().getBounds();
+                        polygons.add(copyData.get(idx));
+                        polygonIndex.add(copyData.get(idx).getPolygon());
+                        changedArea = copyData.get(idx).getPolygon().getBounds();
+                        changedIndex = polygons.size() - 1;
                     } else {
                         changedArea = polygons.get(idx).getPolygon().getBounds();
-                        polygons.set(idx, copyData[idx]);
+                        polygons.set(idx, copyData.get(idx));
+                        polygonIndex.set(idx, copyData.get(idx).getPolygon());
                         changedArea = changedArea.union(polygons.get(idx).getPolygon().getBounds());
+                        changedIndex = idx;
                     }
                 }
             }
             break;
 
             case BreedElite: {
-                GenerationMember copyMember = generationHandler.getRandomMember(true);
-                if ((copyMember == null) || (copyMember.getData().length == 0)) {
+                GenerationMember copyMember = generationHandler.getRandomMember(true, r);
+                if ((copyMember == null) || copyMember.getGenome().isEmpty()) {
                     randomCompleteChange();
                 } else {
-                    PolygonData[] copyData = copyMember.getData();
-                    idx = r.nextInt(copyData.length);
+                    Genome copyData = copyMember.getGenome();
+                    idx = r.nextInt(copyData.size());
                     if (idx >= polygons.size()) {
-                        polygons.add(copyData[idx]);
-                        changedArea = copyData[idx].getPolygon().getBounds();
+                        polygons.add(copyData.get(idx));
+                        polygonIndex.add(copyData.get(idx).getPolygon());
+                        changedArea = copyData.get(idx).getPolygon().getBounds();
+                        changedIndex = polygons.size() - 1;
                     } else {
                         changedArea = polygons.get(idx).getPolygon().getBounds();
-                        polygons.set(idx, copyData[idx]);
+                        polygons.set(idx, copyData.get(idx));
+                        polygonIndex.set(idx, copyData.get(idx).getPolygon());
                         changedArea = changedArea.union(polygons.get(idx).getPolygon().getBounds());
+                        changedIndex = idx;
                     }
                 }
             }
@@ -425,15 +546,203 @@ public class Improver {
         return changedArea;
     }
 
+    /**
+     * returns the index of the lowest polygon in z order that differs from the parent. Polygons below it draw the same as they
+     * do in the parent.
+     *
+     * @return the lowest changed polygon index
+     */
+    public int getChangedIndex() {
+        return changedIndex;
+    }
+
+    /**
+     * returns the spatial index of the polygons returned by {@link #getData()}. It is left alone once the next improvement
+     * starts, so the member the candidate becomes can keep it.
+     *
+     * @return the polygon index
+     */
+    public PolygonIndex getPolygonIndex() {
+        return polygonIndex;
+    }
+
+    /**
+     * works out the genome hash of the improved polygons from the parent's, which an empty genome, with no parent, hashes to 0
+     */
+    private void updateGenomeHash() {
+        genomeHash = polygons.getGenomeHash((changedMember == null) ? 0L : changedMember.getGenomeHash());
+    }
+
+    /**
+     * returns the spatial index of a member's polygons. Members admitted from candidates keep the index they were improved
+     * with, and it is only built here for the others, such as the first generation, the first time it is needed
+     *
+     * @param member
+     *            the generation member
+     * @return the member's polygon index
+     */
+    private PolygonIndex getMemberIndex(GenerationMember member) {
+        PolygonIndex index = member.getPolygonIndex();
+        if (index == null) {
+            index = new PolygonIndex(imageSize, member.getGenome());
+            member.setPolygonIndex(index);
+        }
+        return index;
+    }
+
+    /**
+     * picks the polygon to mutate. With error targeting, a cell of the parent's score is picked in proportion to its error,
+     * and then one of the polygons over that cell, so that mutations are spent where the image is furthest from the target.
+     * Otherwise, or when no polygon is over the cell, any polygon is picked.
+     *
+     * @return the index of the polygon
+     */
+    private int pickPolygon() {
+        if (settings.isUseErrorTargeting() && (changedMember != null) && (changedMember.getScore() instanceof DefaultScore)) {
+            DefaultScore score = (DefaultScore) changedMember.getScore();
+            int cell = score.pickCell(r);
+            if (cell >= 0) {
+                int cellsPerSide = score.getCellsPerSide();
+                int cellWidth = (imageSize.width + cellsPerSide - 1) / cellsPerSide;
+                int cellHeight = (imageSize.height + cellsPerSide - 1) / cellsPerSide;
+                cellArea.setBounds((cell % cellsPerSide) * cellWidth, (cell / cellsPerSide) * cellHeight, cellWidth, cellHeight);
+                if (cellPolygons.length < polygonIndex.size()) {
+                    cellPolygons = new int[polygonIndex.size()];
+                    cellWeights = new double[polygonIndex.size()];
+                }
+                int numPolygons = polygonIndex.query(cellArea, 0, cellPolygons);
+                if (numPolygons > 0) {
+                    // favour small polygons, as large ones are over many cells, and changing them disturbs a large area
+                    double totalWeight = 0.0;
+                    double[] weights = cellWeights;
+                    for (int i = 0; i < numPolygons; i++) {
+                        Rectangle bounds = polygons.get(cellPolygons[i]).getPolygon().getBounds();
+                        weights[i] = 1.0 / Math.max(1.0, (double) bounds.width * bounds.height);
+                        totalWeight += weights[i];
+                    }
+                    double pick = r.nextDouble() * totalWeight;
+                    for (int i = 0; i < (numPolygons - 1); i++) {
+                        pick -= weights[i];
+                        if (pick < 0) {
+                            return cellPolygons[i];
+                        }
+                    }
+                    return cellPolygons[numPolygons - 1];
+                }
+            }
+        }
+        return r.nextInt(polygons.size());
+    }
+
+    /**
+     * returns the color that makes a polygon match the target most closely in the least squares sense, for its alpha. The
+     * polygon draws alpha * color + (1 - alpha) * beneath at each pixel it covers, so the best color is the mean of
+     * (target - (1 - alpha) * beneath) / alpha over those pixels. The target's mean comes exactly from the summed-area
+     * tables, while what lies beneath is estimated by blending the lower polygons at a few random points in the polygon.
+     *
+     * @param idx
+     *            the index of the polygon
+     * @param pd
+     *            the polygon
+     * @return the best color, or null if it can't be found
+     */
+    private Color getOptimalColor(int idx, PolygonData pd) {
+        int extraAlpha = ScanlineRenderer.getExtraAlpha(pd);
+        if ((targetSums == null) || (extraAlpha <= 0)) {
+            return null;
+        }
+
+        Polygon polygon = pd.getPolygon();
+        Color targetColor = targetSums.getMeanColor(polygon);
+        float[] beneath = getMeanBeneath(idx, polygon);
+        if ((targetColor == null) || (beneath == null)) {
+            return null;
+        }
+
+        float alpha = extraAlpha / 255.0f;
+        float beneathFactor = 1.0f - alpha;
+        int red = clipToRange(0, 255, Math.round((targetColor.getRed() - (beneathFactor * beneath[0])) / alpha));
+        int green = clipToRange(0, 255, Math.round((targetColor.getGreen() - (beneathFactor * beneath[1])) / alpha));
+        int blue = clipToRange(0, 255, Math.round((targetColor.getBlue() - (beneathFactor * beneath[2])) / alpha));
+        return new Color(red, green, blue);
+    }
+
+    /**
+     * estimates the mean color drawn beneath a polygon, by blending the polygons below it, over a black background, at
+     * random points inside it
+     *
+     * @param idx
+     *            the index of the polygon
+     * @param polygon
+     *            the polygon's shape
+     * @return the red, green and blue of the mean color, or null if no point inside the polygon was found
+     */
+    private float[] getMeanBeneath(int idx, Polygon polygon) {
+        Rectangle bounds = polygon.getBounds().intersection(new Rectangle(0, 0, imageSize.width, imageSize.height));
+        if (bounds.isEmpty()) {
+            return null;
+        }
+
+        if (belowPolygons.length < polygonIndex.size()) {
+            belowPolygons = new int[polygonIndex.size()];
+        }
+        int numBelow = polygonIndex.query(bounds, 0, belowPolygons);
+
+        float[] beneath = new float[3];
+        int samples = 0;
+        for (int tries = 0; (tries < (BENEATH_SAMPLES * 4)) && (samples < BENEATH_SAMPLES); tries++) {
+            double x = bounds.x + r.nextInt(bounds.width) + 0.5;
+            double y = bounds.y + r.nextInt(bounds.height) + 0.5;
+            if (polygon.contains(x, y)) {
+                float red = 0.0f, green = 0.0f, blue = 0.0f;
+                for (int b = 0; (b < numBelow) && (belowPolygons[b] < idx); b++) {
+                    PolygonData below = polygons.get(belowPolygons[b]);
+                    if (below.getPolygon().contains(x, y)) {
+                        float alpha = ScanlineRenderer.getExtraAlpha(below) / 255.0f;
+                        Color color = below.getColor();
+                        red = (alpha * color.getRed()) + ((1.0f - alpha) * red);
+                        green = (alpha * color.getGreen()) + ((1.0f - alpha) * green);
+                        blue = (alpha * color.getBlue()) + ((1.0f - alpha) * blue);
+                    }
+                }
+                beneath[0] += red;
+                beneath[1] += green;
+                beneath[2] += blue;
+                samples++;
+            }
+        }
+
+        if (samples == 0) {
+            return null;
+        }
+        for (int c = 0; c < beneath.length; c++) {
+            beneath[c] /= samples;
+        }
+        return beneath;
+    }
+
+    /**
+     * creates a new random polygon, centered where the best image is furthest from the target when there is a residual
+     * sampler, otherwise anywhere
+     *
+     * @return the new polygon
+     */
+    private PolygonData newRandomPoly() {
+        Point center = (residuals != null) ? residuals.samplePoint(r) : null;
+        return PolygonData.randomPoly(r, imageSize, settings.getMaxPoints(), center);
+    }
+
     /**
      * generates a random polygon change (all values)
      */
     private void randomCompleteChange() {
-        int idx = r.nextInt(polygons.size());
+        int idx = pickPolygon();
         changedArea = polygons.get(idx).getPolygon().getBounds();
-        PolygonData randomPoly = PolygonData.randomPoly(imageSize, settings.getMaxPoints());
+        PolygonData randomPoly = newRandomPoly();
         changedArea = changedArea.union(randomPoly.getPolygon().getBounds());
         polygons.set(idx, randomPoly);
+        polygonIndex.set(idx, randomPoly.getPolygon());
+        changedIndex = idx;
     }
 
     /**
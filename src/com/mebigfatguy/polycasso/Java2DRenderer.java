@@ -0,0 +1,129 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * a renderer that draws polygons through the standard Java2D pipeline. The graphics object of the last image drawn on is
+ * kept, so that repeatedly rendering into the same image doesn't create a new one each time.
+ */
+public class Java2DRenderer implements Renderer {
+
+    private final Composite srcOpaque = AlphaComposite.getInstance(AlphaComposite.SRC, 1.0f);
+    private BufferedImage graphicsImage;
+    private Graphics2D g2d;
+
+    /**
+     * draws the polygons, in list order, on top of an opaque black background
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData) {
+        Graphics2D g = getGraphics(image);
+        g.setClip(null);
+        g.setColor(Color.BLACK);
+        g.setComposite(srcOpaque);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        for (PolygonData pd : polygonData) {
+            pd.draw(g);
+        }
+    }
+
+    /**
+     * redraws just the clip area of the image, clearing it to opaque black and drawing the polygons that overlap it
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     * @param clip
+     *            the area of the image to redraw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData, Rectangle clip) {
+        Graphics2D g = getGraphics(image);
+        g.setClip(clip.x, clip.y, clip.width, clip.height);
+        g.setColor(Color.BLACK);
+        g.setComposite(srcOpaque);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        drawPolygons(g, polygonData, 0, clip);
+    }
+
+    /**
+     * composites polygons on top of what is already in the clip area of the image, starting at a given polygon
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     * @param fromIndex
+     *            the index of the first polygon to draw
+     * @param clip
+     *            the area of the image to draw in
+     */
+    @Override
+    public void draw(BufferedImage image, List<PolygonData> polygonData, int fromIndex, Rectangle clip) {
+        Graphics2D g = getGraphics(image);
+        g.setClip(clip.x, clip.y, clip.width, clip.height);
+        drawPolygons(g, polygonData, fromIndex, clip);
+    }
+
+    private void drawPolygons(Graphics2D g, List<PolygonData> polygonData, int fromIndex, Rectangle clip) {
+        for (int i = fromIndex; i < polygonData.size(); i++) {
+            PolygonData pd = polygonData.get(i);
+            if (pd.getPolygon().getBounds().intersects(clip)) {
+                pd.draw(g);
+            }
+        }
+    }
+
+    private Graphics2D getGraphics(BufferedImage image) {
+        if (image != graphicsImage) {
+            dispose();
+            g2d = (Graphics2D) image.getGraphics();
+            graphicsImage = image;
+        }
+        return g2d;
+    }
+
+    /**
+     * disposes of the cached graphics object
+     */
+    @Override
+    public void dispose() {
+        if (g2d != null) {
+            g2d.dispose();
+            g2d = null;
+            graphicsImage = null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a per worker cache of partially composited images of members. A member's layers are checkpoints taken every so many
+ * polygons, so that a candidate whose lowest changed polygon is i only needs to composite the polygons from the nearest
+ * checkpoint at or below i upward. The cache holds no more images than fit in its memory budget, dropping the layers of the
+ * least recently used member first, and reusing their images for the next member. As most members are only picked as a
+ * parent once or twice before being dropped from the generation, layers are only built the second time a member is asked
+ * for.
+ */
+public class LayerCache {
+
+    private static final int RECENT_MISSES = 64;
+
+    private static class Layers {
+        final GenerationMember member;
+        final List<BufferedImage> images;
+
+        Layers(GenerationMember layerMember, List<BufferedImage> layerImages) {
+            member = layerMember;
+            images = layerImages;
+        }
+    }
+
+    private final Renderer renderer;
+    private final Dimension imageSize;
+    private final PixelLayout pixelLayout;
+    private final int interval;
+    private final int maxImages;
+    private final List<Layers> entries = new ArrayList<>();
+    private final List<BufferedImage> spareImages = new ArrayList<>();
+    private final GenerationMember[] recentMisses = new GenerationMember[RECENT_MISSES];
+    private int nextMiss;
+    private int allocatedImages;
+    private long hits;
+    private long misses;
+    private long polygonsSkipped;
+
+    /**
+     * creates a layer cache for one worker thread
+     *
+     * @param layerRenderer
+     *            the renderer used to build layers
+     * @param size
+     *            the size of the image
+     * @param layout
+     *            the pixel layout of the layer images
+     * @param layerInterval
+     *            the number of polygons between checkpoints
+     * @param budgetMegabytes
+     *            the most memory the layer images may use
+     */
+    public LayerCache(Renderer layerRenderer, Dimension size, PixelLayout layout, int layerInterval, int budgetMegabytes) {
+        renderer = layerRenderer;
+        imageSize = size;
+        pixelLayout = layout;
+        interval = Math.max(1, layerInterval);
+        long imageBytes = 4L * size.width * size.height;
+        maxImages = (int) Math.min(Integer.MAX_VALUE, (budgetMegabytes * 1024L * 1024L) / Math.max(1L, imageBytes));
+    }
+
+    /**
+     * returns the number of polygons in the deepest checkpoint that can be used for a change at a given polygon
+     *
+     * @param numPolygons
+     *            the number of polygons in the member
+     * @param changedIndex
+     *            the index of the lowest changed polygon
+     * @return the number of polygons composited in the checkpoint, 0 if no checkpoint applies
+     */
+    public int getLayerDepth(int numPolygons, int changedIndex) {
+        if (numPolygons == 0) {
+            return 0;
+        }
+        return (Math.min(changedIndex, numPolygons - 1) / interval) * interval;
+    }
+
+    /**
+     * returns a member's image with the polygons below a checkpoint composited, building all the member's checkpoints if they
+     * aren't cached
+     *
+     * @param member
+     *            the member whose layer is wanted
+     * @param depth
+     *            the number of polygons composited, as returned by getLayerDepth
+     * @return the layer image, which must not be changed, or null if it doesn't fit in the cache
+     */
+    public BufferedImage getLayer(GenerationMember member, int depth) {
+        if (depth <= 0) {
+            return null;
+        }
+
+        Layers layers = null;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).member == member) {
+                layers = entries.remove(i);
+                break;
+            }
+        }
+
+        if (layers == null) {
+            misses++;
+            if (!wasRecentMiss(member)) {
+                return null;
+            }
+            layers = buildLayers(member);
+            if (layers == null) {
+                return null;
+            }
+        } else {
+            hits++;
+        }
+
+        entries.add(0, layers);
+        polygonsSkipped += depth;
+        return layers.images.get((depth / interval) - 1);
+    }
+
+    /**
+     * returns the number of lookups that found the member's layers already built
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * returns the number of lookups that needed the member's layers to be built
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * returns the number of polygons that did not need to be composited because a layer was used
+     *
+     * @return the number of polygons skipped
+     */
+    public long getPolygonsSkipped() {
+        return polygonsSkipped;
+    }
+
+    private boolean wasRecentMiss(GenerationMember member) {
+        for (GenerationMember recent : recentMisses) {
+            if (recent == member) {
+                return true;
+            }
+        }
+
+        recentMisses[nextMiss] = member;
+        nextMiss = (nextMiss + 1) % RECENT_MISSES;
+        return false;
+    }
+
+    private Layers buildLayers(GenerationMember member) {
+        List<PolygonData> polygonData = member.getGenome();
+        int numLayers = (polygonData.size() - 1) / interval;
+        if ((numLayers <= 0) || (numLayers > maxImages)) {
+            return null;
+        }
+
+        while (((spareImages.size() + (maxImages - allocatedImages)) < numLayers) && !entries.isEmpty()) {
+            spareImages.addAll(entries.remove(entries.size() - 1).images);
+        }
+
+        Rectangle bounds = new Rectangle(0, 0, imageSize.width, imageSize.height);
+        List<BufferedImage> images = new ArrayList<>(numLayers);
+        BufferedImage previous = null;
+        for (int l = 1; l <= numLayers; l++) {
+            BufferedImage layer;
+            if (spareImages.isEmpty()) {
+                layer = pixelLayout.createImage(imageSize);
+                allocatedImages++;
+            } else {
+                layer = spareImages.remove(spareImages.size() - 1);
+            }
+
+            if (previous == null) {
+                renderer.render(layer, polygonData.subList(0, interval));
+            } else {
+                CandidateCanvas.copyAll(previous, layer);
+                renderer.draw(layer, polygonData.subList(0, l * interval), (l - 1) * interval, bounds);
+            }
+            images.add(layer);
+            previous = layer;
+        }
+
+        return new Layers(member, images);
+    }
+
+    @Override
+    public String toString() {
+        long lookups = hits + misses;
+        return "Layer cache: " + hits + " hits, " + misses + " misses (" + ((lookups == 0) ? 0 : ((hits * 100) / lookups)) + "% hit rate), " + polygonsSkipped
+                + " polygons skipped";
+    }
+}
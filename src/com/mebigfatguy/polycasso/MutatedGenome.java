@@ -0,0 +1,200 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * a candidate genome, held as its parent's genome and a record of the one change an improvement made to it, replacing,
+ * inserting, removing or moving a polygon. Reading it gives the polygons of the changed genome, without them having been
+ * copied, so a candidate that is rejected costs no more than its changed polygon. Only a candidate that is added to the
+ * generation is turned into a {@link Genome} of its own, by {@link #materialize()}.
+ */
+public final class MutatedGenome extends AbstractList<PolygonData> implements RandomAccess {
+
+    private enum Change {
+        NONE, SET, INSERT, REMOVE, MOVE
+    }
+
+    private final Genome parent;
+    private Change change = Change.NONE;
+    private int index;
+    private int toIndex;
+    private PolygonData polygon;
+    private int size;
+
+    /**
+     * creates a candidate that is, as yet, the same as its parent
+     *
+     * @param parentGenome
+     *            the frozen genome of the parent
+     */
+    public MutatedGenome(Genome parentGenome) {
+        parent = parentGenome;
+        size = parentGenome.size();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PolygonData get(int i) {
+        if ((i < 0) || (i >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+
+        switch (change) {
+            case SET:
+                return (i == index) ? polygon : parent.get(i);
+
+            case INSERT:
+                if (i == index) {
+                    return polygon;
+                }
+                return parent.get((i < index) ? i : i - 1);
+
+            case REMOVE:
+                return parent.get((i < index) ? i : i + 1);
+
+            case MOVE: {
+                if (i == toIndex) {
+                    return polygon;
+                }
+                // the position in the parent with the moved polygon taken out, and then in the parent itself
+                int withoutMoved = (i < toIndex) ? i : i - 1;
+                return parent.get((withoutMoved < index) ? withoutMoved : withoutMoved + 1);
+            }
+
+            default:
+                return parent.get(i);
+        }
+    }
+
+    @Override
+    public PolygonData set(int i, PolygonData pd) {
+        PolygonData old = get(i);
+        record(Change.SET, i, i, pd);
+        return old;
+    }
+
+    @Override
+    public void add(int i, PolygonData pd) {
+        if ((i < 0) || (i > size)) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        record(Change.INSERT, i, i, pd);
+        size++;
+    }
+
+    @Override
+    public PolygonData remove(int i) {
+        PolygonData old = get(i);
+        record(Change.REMOVE, i, i, old);
+        size--;
+        return old;
+    }
+
+    /**
+     * moves a polygon to another z-order position
+     *
+     * @param fromIndex
+     *            the current position of the polygon
+     * @param to
+     *            the position of the polygon once the polygon has been taken out of its current position
+     */
+    public void move(int fromIndex, int to) {
+        PolygonData pd = get(fromIndex);
+        if ((to < 0) || (to >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + to);
+        }
+        record(Change.MOVE, fromIndex, to, pd);
+    }
+
+    /**
+     * returns the genome hash of this candidate, worked out from its parent's hash where the change allows, and otherwise
+     * by hashing all the polygons
+     *
+     * @param parentHash
+     *            the {@link GenomeHash} of the parent genome
+     * @return the genome hash
+     */
+    long getGenomeHash(long parentHash) {
+        switch (change) {
+            case NONE:
+                return parentHash;
+
+            case SET:
+                return (parentHash + GenomeHash.term(polygon, index)) - GenomeHash.term(parent.get(index), index);
+
+            case INSERT:
+                if (index == (size - 1)) {
+                    return parentHash + GenomeHash.term(polygon, index);
+                }
+                return GenomeHash.of(this);
+
+            default:
+                return GenomeHash.of(this);
+        }
+    }
+
+    /**
+     * builds the genome of this candidate, sharing all of the parent's chunks but the one that changed
+     *
+     * @return the frozen genome
+     */
+    public Genome materialize() {
+        Genome genome = new Genome(parent);
+        switch (change) {
+            case SET:
+                genome.set(index, polygon);
+            break;
+
+            case INSERT:
+                genome.add(index, polygon);
+            break;
+
+            case REMOVE:
+                genome.remove(index);
+            break;
+
+            case MOVE:
+                genome.remove(index);
+                genome.add(toIndex, polygon);
+            break;
+
+            default:
+            break;
+        }
+        return genome.freeze();
+    }
+
+    private void record(Change newChange, int i, int to, PolygonData pd) {
+        if (change != Change.NONE) {
+            throw new IllegalStateException("A candidate holds only one change, and already has " + change);
+        }
+        change = newChange;
+        index = i;
+        toIndex = to;
+        polygon = pd;
+        modCount++;
+    }
+}
@@ -34,6 +34,25 @@ import javax.imageio.ImageIO;
  */
 public class PNGSaver implements Saver {
 
+    private final PixelLayout pixelLayout;
+
+    /**
+     * creates a saver that draws the png in the standard four byte layout
+     */
+    public PNGSaver() {
+        this(PixelLayout.ByteABGR);
+    }
+
+    /**
+     * creates a saver that draws the png in a given pixel layout, an IntRGB layout writes a png without an alpha channel
+     *
+     * @param layout
+     *            the layout of the image to draw
+     */
+    public PNGSaver(PixelLayout layout) {
+        pixelLayout = layout;
+    }
+
     /**
      * saves the set of polygons in a png file
      *
@@ -49,7 +68,7 @@ public class PNGSaver implements Saver {
 
         try (BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName)))) {
 
-            BufferedImage image = new BufferedImage(imageSize.width, imageSize.height, BufferedImage.TYPE_4BYTE_ABGR);
+            BufferedImage image = pixelLayout.createImage(imageSize);
             Graphics2D g2d = (Graphics2D) image.getGraphics();
             try {
                 g2d.setColor(Color.BLACK);
@@ -42,6 +42,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * the main window for showing the image as it is being improved on.
@@ -63,6 +64,7 @@ public class PainterFrame extends JFrame implements ImageGeneratedListener {
 	private JMenuItem proxyItem;
 	private ImageGenerator generator;
 	private final Settings settings;
+	private ImageGeneratedEvent shownEvent;
 
 	/**
 	 * creates the main window, setups up menus and listeners
@@ -276,13 +278,24 @@ public class PainterFrame extends JFrame implements ImageGeneratedListener {
 	}
 
 	/**
-	 * implements the ImageGeneratedListener interface to redraw the new best image
+	 * implements the ImageGeneratedListener interface to redraw the new best image. The panel
+	 * is switched to it on the event thread, so that the previous image, given back to its pool
+	 * there, is no longer being painted, nor has a repaint queued for it.
 	 *
 	 * @param event the event describing the new best image
 	 */
 	@Override
-	public void imageGenerated(ImageGeneratedEvent event) {
-		panel.setImage(event.getImage());
+	public void imageGenerated(final ImageGeneratedEvent event) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				panel.setImage(event.getImage());
+				if (shownEvent != null) {
+					shownEvent.release();
+				}
+				shownEvent = event;
+			}
+		});
 	}
 
 	/**
@@ -305,7 +318,7 @@ public class PainterFrame extends JFrame implements ImageGeneratedListener {
 						return;
 					}
 				}
-				type.getSaver().save(fileName, generator.getImageSize(), generator.getBestData());
+				type.getSaver(settings).save(fileName, generator.getImageSize(), generator.getBestData());
 			}
 		} catch (IOException ioe) {
 			String message = MessageFormat.format(PolycassoBundle.getString(PolycassoBundle.Key.SaveFailure),
@@ -0,0 +1,112 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * an enum of the ways the pixels of the target, candidate and exported images can be laid out in memory
+ */
+public enum PixelLayout {
+
+    /**
+     * four bytes per pixel, in alpha, blue, green, red order
+     */
+    ByteABGR(BufferedImage.TYPE_4BYTE_ABGR, 4),
+    /**
+     * one int per pixel, with red, green and blue packed in the low three bytes, so a pixel is read or written with one
+     * access
+     */
+    IntRGB(BufferedImage.TYPE_INT_RGB, 1);
+
+    private final int imageType;
+    private final int elementsPerPixel;
+
+    /**
+     * internal constructor for setting the image type and the pixel stride
+     *
+     * @param type
+     *            the BufferedImage type of this layout
+     * @param elements
+     *            the number of array elements used for each pixel
+     */
+    private PixelLayout(int type, int elements) {
+        imageType = type;
+        elementsPerPixel = elements;
+    }
+
+    /**
+     * returns the BufferedImage type of this layout
+     *
+     * @return the image type
+     */
+    public int getImageType() {
+        return imageType;
+    }
+
+    /**
+     * returns the number of elements of the pixel array used for each pixel
+     *
+     * @return 4 for bytes, 1 for ints
+     */
+    public int getElementsPerPixel() {
+        return elementsPerPixel;
+    }
+
+    /**
+     * creates an image with this layout
+     *
+     * @param size
+     *            the size of the image
+     * @return a new image
+     */
+    public BufferedImage createImage(Dimension size) {
+        return new BufferedImage(size.width, size.height, imageType);
+    }
+
+    /**
+     * returns the layout of an image, which must be one created with a pixel layout
+     *
+     * @param image
+     *            the image to check
+     * @return the image's layout
+     */
+    public static PixelLayout of(BufferedImage image) {
+        return (image.getType() == BufferedImage.TYPE_INT_RGB) ? IntRGB : ByteABGR;
+    }
+
+    /**
+     * returns the backing array of an image, either a byte[] or an int[], for use with System.arraycopy
+     *
+     * @param image
+     *            the image whose pixels to get
+     * @return the pixel array
+     */
+    public static Object getPixels(BufferedImage image) {
+        DataBuffer db = image.getRaster().getDataBuffer();
+        if (db instanceof DataBufferInt) {
+            return ((DataBufferInt) db).getData();
+        }
+        return ((DataBufferByte) db).getData();
+    }
+}
@@ -71,6 +71,17 @@ public class PolycassoBundle {
         MaximumPolygonPoints("pc.maxpolygonpoints"),
         MaximumPointMovement("pc.maximumpointmovement"),
         MaximumColorChange("pc.maximumcolorchange"),
+        EngineOptions("pc.engineoptions"),
+        Renderer("pc.renderer"),
+        RendererToolTip("pc.renderer.tt"),
+        RenderMode("pc.rendermode"),
+        RenderModeToolTip("pc.rendermode.tt"),
+        PixelLayout("pc.pixellayout"),
+        PixelLayoutToolTip("pc.pixellayout.tt"),
+        IslandCount("pc.islandcount"),
+        IslandCountToolTip("pc.islandcount.tt"),
+        RandomSeed("pc.randomseed"),
+        RandomSeedToolTip("pc.randomseed.tt"),
         ProxyHost("pc.proxyhost"),
         ProxyPort("pc.proxyport"),
         EnterURL("pc.enterurl"),
@@ -22,6 +22,7 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.util.Random;
@@ -99,19 +100,26 @@ public class PolygonData implements Cloneable {
     }
 
     /**
-     * creates a totally random polygon that is limited by the specified size
+     * creates a random polygon that is limited by the specified size, whose points are picked from around a given center
      *
+     * @param r
+     *            the source of randomness
      * @param size
      *            the maximum size of the bounding box of the polygon
      * @param maxPoints
      *            the maximum number of points to generate
+     * @param center
+     *            the point to center the polygon's bounding box on, as far as the image allows, or null to place it anywhere
      *
      * @return a random polygon
      */
-    public static PolygonData randomPoly(Dimension size, int maxPoints) {
-        Random r = new Random();
+    public static PolygonData randomPoly(Random r, Dimension size, int maxPoints, Point center) {
         Polygon polygon = new Polygon();
         Rectangle polyRect = getPolyBounds(r, size);
+        if (center != null) {
+            polyRect.x = Math.max(-1, Math.min((size.width - polyRect.width) - 1, center.x - (polyRect.width / 2)));
+            polyRect.y = Math.max(-1, Math.min((size.height - polyRect.height) - 1, center.y - (polyRect.height / 2)));
+        }
 
         int numPoints = r.nextInt(maxPoints - 3) + 3;
         for (int i = 0; i < numPoints; i++) {
@@ -168,13 +176,35 @@ public class PolygonData implements Cloneable {
     public PolygonData clone() {
         try {
             PolygonData clone = (PolygonData) super.clone();
-            clone.color = new Color(color.getRed(), color.getGreen(), color.getBlue());
+            // Color is immutable, so the copy shares it
             clone.polygon = new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
 
             return clone;
         } catch (CloneNotSupportedException cnse) {
-            return randomPoly(new Dimension(100, 100), 3);
+            return new PolygonData(color, alpha, new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints));
+        }
+    }
+
+    /**
+     * creates a copy of this polygon data with its points scaled, as when moving it to an image of a different size
+     *
+     * @param xScale
+     *            the factor to scale x coordinates by
+     * @param yScale
+     *            the factor to scale y coordinates by
+     *
+     * @return the scaled copy of the polygon data
+     */
+    public PolygonData scale(double xScale, double yScale) {
+        PolygonData scaled = clone();
+        Polygon scaledPolygon = scaled.polygon;
+        for (int i = 0; i < scaledPolygon.npoints; i++) {
+            scaledPolygon.xpoints[i] = (int) Math.round(scaledPolygon.xpoints[i] * xScale);
+            scaledPolygon.ypoints[i] = (int) Math.round(scaledPolygon.ypoints[i] * yScale);
         }
+        scaledPolygon.invalidate();
+
+        return scaled;
     }
 
     /**
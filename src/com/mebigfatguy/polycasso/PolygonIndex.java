@@ -0,0 +1,380 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * a uniform grid of bins over the image, recording which polygons of one genome have bounds touching each bin, so that the
+ * polygons overlapping a changed area can be found without scanning, and recomputing the bounds of, every polygon. An index
+ * can be copied from its parent's index and then kept up to date as a mutation changes polygons. The copy shares the
+ * parent's bins, and the chunks of polygon bounds, until it has to change them, so copying is cheap, and the parent is
+ * never modified.
+ */
+public class PolygonIndex {
+
+    private static final int NUM_BINS = 8;
+    private static final int INITIAL_CAPACITY = 16;
+    // room left in a bin when it is copied, as a mutation adds at most a polygon or two to each bin
+    private static final int BIN_SLACK = 4;
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int binWidth;
+    private final int binHeight;
+    // the bounds of each polygon as minX, minY, maxX, maxY, CHUNK_SIZE polygons to a chunk
+    private int[][] boundChunks;
+    private boolean[] boundChunkOwned;
+    private int size;
+    private final int[][] bins;
+    private final int[] binSizes;
+    private final boolean[] binOwned;
+
+    /**
+     * creates an empty index for an image size
+     *
+     * @param imageSize
+     *            the size of the image the polygons are drawn on
+     */
+    public PolygonIndex(Dimension imageSize) {
+        binWidth = Math.max(1, ((imageSize.width + NUM_BINS) - 1) / NUM_BINS);
+        binHeight = Math.max(1, ((imageSize.height + NUM_BINS) - 1) / NUM_BINS);
+        boundChunks = new int[0][];
+        boundChunkOwned = new boolean[0];
+        bins = new int[NUM_BINS * NUM_BINS][];
+        binSizes = new int[NUM_BINS * NUM_BINS];
+        binOwned = new boolean[NUM_BINS * NUM_BINS];
+        for (int b = 0; b < bins.length; b++) {
+            bins[b] = new int[INITIAL_CAPACITY];
+            binOwned[b] = true;
+        }
+    }
+
+    /**
+     * creates an index of a genome's polygons
+     *
+     * @param imageSize
+     *            the size of the image the polygons are drawn on
+     * @param polygonData
+     *            the polygons of the genome, in z-order
+     */
+    public PolygonIndex(Dimension imageSize, List<PolygonData> polygonData) {
+        this(imageSize);
+        for (PolygonData pd : polygonData) {
+            add(pd.getPolygon());
+        }
+    }
+
+    /**
+     * creates a copy of an index, that shares the bins of the original until they are changed
+     *
+     * @param parent
+     *            the index to copy, which must not be changed afterwards
+     */
+    public PolygonIndex(PolygonIndex parent) {
+        binWidth = parent.binWidth;
+        binHeight = parent.binHeight;
+        size = parent.size;
+        boundChunks = parent.boundChunks.clone();
+        boundChunkOwned = new boolean[boundChunks.length];
+        bins = parent.bins.clone();
+        binSizes = parent.binSizes.clone();
+        binOwned = new boolean[bins.length];
+    }
+
+    /**
+     * returns the number of polygons in the index
+     *
+     * @return the polygon count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * adds a polygon on top of all the others
+     *
+     * @param polygon
+     *            the polygon to add
+     */
+    public void add(Polygon polygon) {
+        insert(size, polygon);
+    }
+
+    /**
+     * inserts a polygon at a z-order position, moving the polygons at or above it up one
+     *
+     * @param index
+     *            the position of the new polygon
+     * @param polygon
+     *            the polygon to insert
+     */
+    public void insert(int index, Polygon polygon) {
+        ensureCapacity(size + 1);
+        if (index < size) {
+            shiftIndices(index, 1);
+            for (int i = size; i > index; i--) {
+                copyBounds(i - 1, i);
+            }
+        }
+        size++;
+        setBounds(index, polygon);
+        addToBins(index);
+    }
+
+    /**
+     * replaces the polygon at a z-order position
+     *
+     * @param index
+     *            the position of the polygon
+     * @param polygon
+     *            the new polygon
+     */
+    public void set(int index, Polygon polygon) {
+        removeFromBins(index);
+        setBounds(index, polygon);
+        addToBins(index);
+    }
+
+    /**
+     * removes the polygon at a z-order position, moving the polygons above it down one
+     *
+     * @param index
+     *            the position of the polygon to remove
+     */
+    public void remove(int index) {
+        removeFromBins(index);
+        size--;
+        if (index < size) {
+            for (int i = index; i < size; i++) {
+                copyBounds(i + 1, i);
+            }
+            shiftIndices(index + 1, -1);
+        }
+    }
+
+    /**
+     * moves a polygon to another z-order position
+     *
+     * @param fromIndex
+     *            the current position of the polygon
+     * @param toIndex
+     *            the position of the polygon once the polygon has been taken out of its current position
+     * @param polygon
+     *            the polygon being moved
+     */
+    public void move(int fromIndex, int toIndex, Polygon polygon) {
+        remove(fromIndex);
+        insert(toIndex, polygon);
+    }
+
+    /**
+     * finds the polygons whose bounds overlap an area
+     *
+     * @param area
+     *            the area to look in
+     * @param fromIndex
+     *            the lowest polygon index of interest
+     * @param result
+     *            filled with the indices of the overlapping polygons in z-order, which must be at least {@link #size()} long
+     * @return the number of overlapping polygons
+     */
+    public int query(Rectangle area, int fromIndex, int[] result) {
+        if (area.isEmpty()) {
+            return 0;
+        }
+
+        int left = area.x;
+        int top = area.y;
+        int right = area.x + area.width;
+        int bottom = area.y + area.height;
+        int firstBinX = binX(left);
+        int lastBinX = binX(right - 1);
+        int firstBinY = binY(top);
+        int lastBinY = binY(bottom - 1);
+
+        int count = 0;
+        for (int by = firstBinY; by <= lastBinY; by++) {
+            for (int bx = firstBinX; bx <= lastBinX; bx++) {
+                int bin = (by * NUM_BINS) + bx;
+                int[] entries = bins[bin];
+                for (int e = 0; e < binSizes[bin]; e++) {
+                    int p = entries[e];
+                    if (p < fromIndex) {
+                        continue;
+                    }
+                    int[] chunk = boundChunks[p >>> CHUNK_BITS];
+                    int b = (p & CHUNK_MASK) << 2;
+                    int minX = chunk[b];
+                    int minY = chunk[b + 1];
+                    // a polygon spanning several bins is only reported from the first bin of the area it is in
+                    if ((bx == Math.max(binX(minX), firstBinX)) && (by == Math.max(binY(minY), firstBinY)) && (minX < right)
+                            && (chunk[b + 2] > left) && (minY < bottom) && (chunk[b + 3] > top)) {
+                        result[count++] = p;
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(result, 0, count);
+        return count;
+    }
+
+    private void setBounds(int index, Polygon polygon) {
+        int npoints = polygon.npoints;
+        int[] xpoints = polygon.xpoints;
+        int[] ypoints = polygon.ypoints;
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (int i = 0; i < npoints; i++) {
+            x0 = Math.min(x0, xpoints[i]);
+            x1 = Math.max(x1, xpoints[i]);
+            y0 = Math.min(y0, ypoints[i]);
+            y1 = Math.max(y1, ypoints[i]);
+        }
+        if (npoints < 3) {
+            x0 = y0 = x1 = y1 = 0;
+        }
+
+        int[] chunk = ownBoundChunk(index >>> CHUNK_BITS);
+        int b = (index & CHUNK_MASK) << 2;
+        chunk[b] = x0;
+        chunk[b + 1] = y0;
+        chunk[b + 2] = x1;
+        chunk[b + 3] = y1;
+    }
+
+    private void copyBounds(int fromIndex, int toIndex) {
+        int[] from = boundChunks[fromIndex >>> CHUNK_BITS];
+        System.arraycopy(from, (fromIndex & CHUNK_MASK) << 2, ownBoundChunk(toIndex >>> CHUNK_BITS), (toIndex & CHUNK_MASK) << 2, 4);
+    }
+
+    /**
+     * adds a polygon to the bins its bounds touch. Polygons with empty bounds can't cover any pixels, so are not put in any.
+     */
+    private void addToBins(int index) {
+        int[] chunk = boundChunks[index >>> CHUNK_BITS];
+        int b = (index & CHUNK_MASK) << 2;
+        if ((chunk[b] >= chunk[b + 2]) || (chunk[b + 1] >= chunk[b + 3])) {
+            return;
+        }
+
+        int lastBinX = binX(chunk[b + 2] - 1);
+        int lastBinY = binY(chunk[b + 3] - 1);
+        for (int by = binY(chunk[b + 1]); by <= lastBinY; by++) {
+            for (int bx = binX(chunk[b]); bx <= lastBinX; bx++) {
+                int bin = ownBin((by * NUM_BINS) + bx);
+                if (binSizes[bin] == bins[bin].length) {
+                    bins[bin] = Arrays.copyOf(bins[bin], bins[bin].length * 2);
+                }
+                bins[bin][binSizes[bin]++] = index;
+            }
+        }
+    }
+
+    private void removeFromBins(int index) {
+        int[] chunk = boundChunks[index >>> CHUNK_BITS];
+        int b = (index & CHUNK_MASK) << 2;
+        if ((chunk[b] >= chunk[b + 2]) || (chunk[b + 1] >= chunk[b + 3])) {
+            return;
+        }
+
+        int lastBinX = binX(chunk[b + 2] - 1);
+        int lastBinY = binY(chunk[b + 3] - 1);
+        for (int by = binY(chunk[b + 1]); by <= lastBinY; by++) {
+            for (int bx = binX(chunk[b]); bx <= lastBinX; bx++) {
+                int bin = ownBin((by * NUM_BINS) + bx);
+                int[] entries = bins[bin];
+                for (int e = 0; e < binSizes[bin]; e++) {
+                    if (entries[e] == index) {
+                        entries[e] = entries[--binSizes[bin]];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * adds a delta to all polygon indices at or above a position
+     */
+    private void shiftIndices(int fromIndex, int delta) {
+        for (int bin = 0; bin < bins.length; bin++) {
+            boolean owned = binOwned[bin];
+            int[] entries = bins[bin];
+            for (int e = 0; e < binSizes[bin]; e++) {
+                if (entries[e] >= fromIndex) {
+                    if (!owned) {
+                        entries = bins[ownBin(bin)];
+                        owned = true;
+                    }
+                    entries[e] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * makes sure a bin is not shared with the index this one was copied from, before it is changed
+     */
+    private int ownBin(int bin) {
+        if (!binOwned[bin]) {
+            bins[bin] = Arrays.copyOf(bins[bin], binSizes[bin] + BIN_SLACK);
+            binOwned[bin] = true;
+        }
+        return bin;
+    }
+
+    /**
+     * makes sure a chunk of bounds is not shared with the index this one was copied from, before it is changed
+     */
+    private int[] ownBoundChunk(int c) {
+        if (!boundChunkOwned[c]) {
+            boundChunks[c] = boundChunks[c].clone();
+            boundChunkOwned[c] = true;
+        }
+        return boundChunks[c];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if ((boundChunks.length << CHUNK_BITS) < capacity) {
+            int chunks = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+            int oldChunks = boundChunks.length;
+            boundChunks = Arrays.copyOf(boundChunks, chunks);
+            boundChunkOwned = Arrays.copyOf(boundChunkOwned, chunks);
+            for (int c = oldChunks; c < chunks; c++) {
+                boundChunks[c] = new int[CHUNK_SIZE << 2];
+                boundChunkOwned[c] = true;
+            }
+        }
+    }
+
+    private int binX(int x) {
+        return Math.min(Math.max(x / binWidth, 0), NUM_BINS - 1);
+    }
+
+    private int binY(int y) {
+        return Math.min(Math.max(y / binHeight, 0), NUM_BINS - 1);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+/**
+ * an enum of the ways a candidate image can be drawn relative to the member it was improved from
+ */
+public enum RenderMode {
+
+    /**
+     * clear the whole image and redraw every polygon for every candidate
+     */
+    Full,
+    /**
+     * start from the parent member's cached image, and only redraw the polygons overlapping the area the improvement changed
+     */
+    DirtyRect,
+    /**
+     * like DirtyRect, but start the changed area from a cached checkpoint of the parent's lower polygons, so that only the
+     * polygons at or above the changed one are composited
+     */
+    LayerCache,
+    /**
+     * like DirtyRect, but the changed area is drawn a row at a time with every overlapping polygon, and each row is scored
+     * as soon as it is finished, against the parent's error at the same pixels. Always draws with the scanline renderer.
+     */
+    Fused;
+}
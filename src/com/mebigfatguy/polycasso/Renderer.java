@@ -0,0 +1,73 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * describes how a set of polygons is drawn onto a candidate image. Renderers may hold scratch state, and so are not thread
+ * safe; each worker thread is expected to create its own.
+ */
+public interface Renderer {
+
+    /**
+     * draws the polygons, in list order, on top of an opaque black background
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     */
+    void render(BufferedImage image, List<PolygonData> polygonData);
+
+    /**
+     * redraws just the clip area of the image, clearing it to opaque black and drawing the polygons that overlap it. Pixels
+     * outside of the clip are left alone.
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     * @param clip
+     *            the area of the image to redraw
+     */
+    void render(BufferedImage image, List<PolygonData> polygonData, Rectangle clip);
+
+    /**
+     * composites polygons on top of what is already in the clip area of the image, starting at a given polygon, without
+     * clearing it first
+     *
+     * @param image
+     *            the image to draw on
+     * @param polygonData
+     *            the polygons to draw
+     * @param fromIndex
+     *            the index of the first polygon to draw
+     * @param clip
+     *            the area of the image to draw in
+     */
+    void draw(BufferedImage image, List<PolygonData> polygonData, int fromIndex, Rectangle clip);
+
+    /**
+     * releases any resources held by this renderer
+     */
+    void dispose();
+}
@@ -0,0 +1,60 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+/**
+ * an enum of the available backends for drawing candidate images
+ */
+public enum RendererType {
+
+    /**
+     * draw thru the standard Java2D pipeline
+     */
+    Java2D {
+        @Override
+        public Renderer createRenderer() {
+            return new Java2DRenderer();
+        }
+    },
+    /**
+     * draw with the pure java scanline polygon filler
+     */
+    Scanline {
+        @Override
+        public Renderer createRenderer() {
+            return new ScanlineRenderer();
+        }
+    },
+    /**
+     * draw with the scanline polygon filler, checking each image against Java2D
+     */
+    Verifying {
+        @Override
+        public Renderer createRenderer() {
+            return new VerifyingRenderer();
+        }
+    };
+
+    /**
+     * creates a new renderer of this type, for use by one thread
+     *
+     * @return a renderer
+     */
+    public abstract Renderer createRenderer();
+}
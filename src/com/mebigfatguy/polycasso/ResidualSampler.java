@@ -0,0 +1,209 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * picks points of the image in proportion to how far the best image so far is from the target there, so that new polygons
+ * and points can be put where they are most needed. The squared error of the best image is summed over small blocks of
+ * pixels, and an alias table over the blocks lets a block be picked in constant time. The map is refreshed from new best
+ * images at most every so often, and the table is built in the background and then swapped in, so that workers never wait
+ * for it. Until the first table is ready, no points are picked.
+ */
+class ResidualSampler {
+
+    private static final int BLOCK_SIZE = 4;
+    private static final long REFRESH_NANOS = 1000000000L;
+
+    private final ScoreKernel kernel = ScoreKernel.getInstance();
+    private final byte[] targetBuffer;
+    private final int[] targetPixels;
+    private final int width;
+    private final int height;
+    private final int blocksWide;
+    private final int blocksHigh;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile long lastRefresh;
+    private volatile AliasTable table;
+
+    /**
+     * creates a sampler for a target image, which has no table until the first best image is offered
+     *
+     * @param target
+     *            the target image, in one of the {@link PixelLayout}s
+     */
+    ResidualSampler(BufferedImage target) {
+        width = target.getWidth();
+        height = target.getHeight();
+        blocksWide = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blocksHigh = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        Object pixels = PixelLayout.getPixels(target);
+        targetPixels = (pixels instanceof int[]) ? (int[]) pixels : null;
+        targetBuffer = (pixels instanceof byte[]) ? (byte[]) pixels : null;
+        lastRefresh = System.nanoTime() - REFRESH_NANOS;
+    }
+
+    /**
+     * offers a new best image to refresh the map from. If the map was refreshed recently, or a table is still being built,
+     * the image is ignored. Otherwise its error is summed into blocks before returning, so the caller is free to change
+     * the image afterwards, and the table is built in the background.
+     *
+     * @param bestImage
+     *            the best image so far, the same size and layout as the target
+     */
+    void offer(BufferedImage bestImage) {
+        long now = System.nanoTime();
+        if (((now - lastRefresh) < REFRESH_NANOS) || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        lastRefresh = now;
+
+        final long[] blockErrors = getBlockErrors(PixelLayout.getPixels(bestImage));
+        CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    table = new AliasTable(blockErrors);
+                } finally {
+                    rebuilding.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * picks a point in proportion to the error of the best image there
+     *
+     * @param r
+     *            the source of randomness
+     * @return the point, or null if there is no table yet
+     */
+    Point samplePoint(Random r) {
+        AliasTable current = table;
+        if (current == null) {
+            return null;
+        }
+
+        int block = current.pick(r);
+        int x = Math.min(width - 1, ((block % blocksWide) * BLOCK_SIZE) + r.nextInt(BLOCK_SIZE));
+        int y = Math.min(height - 1, ((block / blocksWide) * BLOCK_SIZE) + r.nextInt(BLOCK_SIZE));
+        return new Point(x, y);
+    }
+
+    /**
+     * returns the error of the best image in the block holding a point, as of the latest table
+     *
+     * @param x
+     *            the column of the point
+     * @param y
+     *            the row of the point
+     * @return the error of the block, or 0 if the point is outside the image, or there is no table yet
+     */
+    long getResidual(int x, int y) {
+        AliasTable current = table;
+        if ((current == null) || (x < 0) || (y < 0) || (x >= width) || (y >= height)) {
+            return 0L;
+        }
+        return current.weights[((y / BLOCK_SIZE) * blocksWide) + (x / BLOCK_SIZE)];
+    }
+
+    private long[] getBlockErrors(Object buffer) {
+        long[] blockErrors = new long[blocksWide * blocksHigh];
+        for (int y = 0; y < height; y++) {
+            int blockRow = (y / BLOCK_SIZE) * blocksWide;
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                int start = (y * width) + (blockX * BLOCK_SIZE);
+                int end = Math.min(start + BLOCK_SIZE, (y + 1) * width);
+                if (buffer instanceof int[]) {
+                    blockErrors[blockRow + blockX] += kernel.error(targetPixels, (int[]) buffer, start, end);
+                } else {
+                    blockErrors[blockRow + blockX] += kernel.error(targetBuffer, (byte[]) buffer, start * 4, end * 4);
+                }
+            }
+        }
+        return blockErrors;
+    }
+
+    /**
+     * Vose's alias table, by which an entry can be picked in proportion to its weight with one random index and one coin
+     * flip. Each slot holds the chance of keeping its own entry, and the entry to take instead.
+     */
+    private static class AliasTable {
+        final long[] weights;
+        final double[] keep;
+        final int[] alias;
+
+        AliasTable(long[] entryWeights) {
+            weights = entryWeights;
+            int n = weights.length;
+            keep = new double[n];
+            alias = new int[n];
+
+            double total = 0.0;
+            for (long weight : weights) {
+                total += weight;
+            }
+
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int numSmall = 0;
+            int numLarge = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = (total > 0.0) ? ((weights[i] * n) / total) : 1.0;
+                if (scaled[i] < 1.0) {
+                    small[numSmall++] = i;
+                } else {
+                    large[numLarge++] = i;
+                }
+            }
+
+            while ((numSmall > 0) && (numLarge > 0)) {
+                int less = small[--numSmall];
+                int more = large[--numLarge];
+                keep[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+                if (scaled[more] < 1.0) {
+                    small[numSmall++] = more;
+                } else {
+                    large[numLarge++] = more;
+                }
+            }
+
+            // whatever is left is within rounding of 1
+            while (numLarge > 0) {
+                keep[large[--numLarge]] = 1.0;
+            }
+            while (numSmall > 0) {
+                keep[small[--numSmall]] = 1.0;
+            }
+        }
+
+        int pick(Random r) {
+            int slot = r.nextInt(keep.length);
+            return (r.nextDouble() < keep[slot]) ? slot : alias[slot];
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Color;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * a renderer that fills polygons with an even-odd scanline algorithm, blending directly into the pixels of a TYPE_4BYTE_ABGR
+ * or TYPE_INT_RGB image. Edges are stepped the same way the Java2D span iterator steps them (including its quarter pixel stroke
+ * normalization), and colors are blended with the same 8 bit math as its SRC_OVER loops, so that the output is pixel for
+ * pixel the same as {@link Java2DRenderer}. Scratch edge tables are reused between calls, so no allocation is done once
+ * they have grown to the largest polygon seen. Edges that start above a clip area are jumped straight to its first row.
+ */
+public class ScanlineRenderer implements Renderer {
+
+    private final EdgeTable edges = new EdgeTable();
+    private int[] crossings = new int[0];
+    private byte[] blackRow = new byte[0];
+
+    /**
+     * draws the polygons, in list order, on top of an opaque black background
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData) {
+        renderArea(image, polygonData, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * redraws just the clip area of the image, clearing it to opaque black and drawing the polygons that overlap it
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     * @param clip
+     *            the area of the image to redraw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData, Rectangle clip) {
+        int left = Math.max(clip.x, 0);
+        int top = Math.max(clip.y, 0);
+        int right = Math.min(clip.x + clip.width, image.getWidth());
+        int bottom = Math.min(clip.y + clip.height, image.getHeight());
+        if ((left < right) && (top < bottom)) {
+            renderArea(image, polygonData, left, top, right, bottom);
+        }
+    }
+
+    /**
+     * composites polygons on top of what is already in the clip area of the image, starting at a given polygon
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     * @param fromIndex
+     *            the index of the first polygon to draw
+     * @param clip
+     *            the area of the image to draw in
+     */
+    @Override
+    public void draw(BufferedImage image, List<PolygonData> polygonData, int fromIndex, Rectangle clip) {
+        int left = Math.max(clip.x, 0);
+        int top = Math.max(clip.y, 0);
+        int right = Math.min(clip.x + clip.width, image.getWidth());
+        int bottom = Math.min(clip.y + clip.height, image.getHeight());
+        if ((left < right) && (top < bottom)) {
+            drawArea(image, polygonData, fromIndex, left, top, right, bottom);
+        }
+    }
+
+    private void renderArea(BufferedImage image, List<PolygonData> polygonData, int left, int top, int right, int bottom) {
+        clear(PixelLayout.getPixels(image), image.getWidth(), left, top, right, bottom);
+        drawArea(image, polygonData, 0, left, top, right, bottom);
+    }
+
+    private void drawArea(BufferedImage image, List<PolygonData> polygonData, int fromIndex, int left, int top, int right, int bottom) {
+        Object buffer = PixelLayout.getPixels(image);
+        int width = image.getWidth();
+
+        boolean fullImage = (left == 0) && (top == 0) && (right == width) && (bottom == image.getHeight());
+        for (int i = fromIndex; i < polygonData.size(); i++) {
+            PolygonData pd = polygonData.get(i);
+            if (fullImage || overlaps(pd.getPolygon(), left, top, right, bottom)) {
+                fillPolygon(buffer, width, pd, left, top, right, bottom);
+            }
+        }
+    }
+
+    /**
+     * nothing to release, as the scratch tables are just garbage collected
+     */
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * fills an area of the buffer with opaque black
+     *
+     * @param buffer
+     *            the ABGR bytes or RGB ints to clear
+     * @param width
+     *            the width of the image
+     * @param left
+     *            the first column to clear
+     * @param top
+     *            the first row to clear
+     * @param right
+     *            the column after the last to clear
+     * @param bottom
+     *            the row after the last to clear
+     */
+    void clear(Object buffer, int width, int left, int top, int right, int bottom) {
+        if (buffer instanceof int[]) {
+            for (int y = top; y < bottom; y++) {
+                int rowStart = y * width;
+                Arrays.fill((int[]) buffer, rowStart + left, rowStart + right, 0);
+            }
+            return;
+        }
+
+        int rowLen = (right - left) * 4;
+        if (blackRow.length < rowLen) {
+            blackRow = new byte[width * 4];
+            for (int i = 0; i < blackRow.length; i += 4) {
+                blackRow[i] = (byte) 0xFF;
+            }
+        }
+
+        for (int y = top; y < bottom; y++) {
+            System.arraycopy(blackRow, 0, buffer, ((y * width) + left) * 4, rowLen);
+        }
+    }
+
+    /**
+     * determines if the bounding box of a polygon touches an area
+     *
+     * @param polygon
+     *            the polygon to check
+     * @param left
+     *            the first column of the area
+     * @param top
+     *            the first row of the area
+     * @param right
+     *            the column after the last of the area
+     * @param bottom
+     *            the row after the last of the area
+     * @return whether the polygon could draw any pixels in the area
+     */
+    static boolean overlaps(Polygon polygon, int left, int top, int right, int bottom) {
+        Rectangle bounds = polygon.getBounds();
+        return (bounds.x < right) && ((bounds.x + bounds.width) > left) && (bounds.y < bottom) && ((bounds.y + bounds.height) > top);
+    }
+
+    /**
+     * composites one polygon on to the buffer using SRC_OVER with the polygon's alpha
+     *
+     * @param buffer
+     *            the ABGR bytes or RGB ints of the image
+     * @param width
+     *            the width of the image
+     * @param pd
+     *            the polygon to draw
+     * @param left
+     *            the first column that may be drawn
+     * @param top
+     *            the first row that may be drawn
+     * @param right
+     *            the column after the last that may be drawn
+     * @param bottom
+     *            the row after the last that may be drawn
+     */
+    private void fillPolygon(Object buffer, int width, PolygonData pd, int left, int top, int right, int bottom) {
+        int extraAlpha = getExtraAlpha(pd);
+        if (extraAlpha <= 0) {
+            return;
+        }
+
+        edges.clear();
+        edges.addPolygon(pd.getPolygon(), top, bottom);
+        if (edges.isEmpty()) {
+            return;
+        }
+        if (crossings.length < edges.getMaxPolygonEdges()) {
+            crossings = new int[edges.getMaxPolygonEdges()];
+        }
+
+        int color = getBlendColor(pd.getColor(), extraAlpha);
+        int lastRow = Math.min(edges.getBottom(), bottom);
+        for (int y = edges.getTop(); y < lastRow; y++) {
+            int numCrossings = edges.collectCrossings(0, y, crossings);
+            if (buffer instanceof int[]) {
+                fillSpans((int[]) buffer, y * width, crossings, numCrossings, left, right, color, extraAlpha);
+            } else {
+                fillSpans((byte[]) buffer, y * width, crossings, numCrossings, left, right, color, extraAlpha);
+            }
+        }
+    }
+
+    /**
+     * returns the 8 bit alpha Java2D composites a polygon with. Java2D rounds in double, and rounding in float instead
+     * lands some alphas a level off.
+     *
+     * @param pd
+     *            the polygon to be drawn
+     * @return the alpha (0 - 255)
+     */
+    static int getExtraAlpha(PolygonData pd) {
+        return Math.min(255, (int) ((pd.getAlpha() * 255.0) + 0.5));
+    }
+
+    /**
+     * returns the color of a polygon premultiplied by its alpha, packed as 0x00RRGGBB, ready to be passed to
+     * {@link #fillSpans}
+     *
+     * @param color
+     *            the polygon's color
+     * @param extraAlpha
+     *            the 8 bit alpha of the polygon
+     * @return the premultiplied color
+     */
+    static int getBlendColor(Color color, int extraAlpha) {
+        int red = color.getRed();
+        int green = color.getGreen();
+        int blue = color.getBlue();
+        if (extraAlpha != 255) {
+            red = mul8(extraAlpha, red);
+            green = mul8(extraAlpha, green);
+            blue = mul8(extraAlpha, blue);
+        }
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * blends the spans between pairs of crossings on one row of the buffer, clipped to a range of columns
+     *
+     * @param buffer
+     *            the ABGR bytes of the image
+     * @param rowStart
+     *            the pixel index of the first pixel of the row
+     * @param crossings
+     *            the sorted x positions where the polygon's edges cross the row
+     * @param numCrossings
+     *            the number of crossings
+     * @param left
+     *            the first column that may be drawn
+     * @param right
+     *            the column after the last that may be drawn
+     * @param color
+     *            the premultiplied color from {@link #getBlendColor}
+     * @param extraAlpha
+     *            the 8 bit alpha of the polygon
+     */
+    static void fillSpans(byte[] buffer, int rowStart, int[] crossings, int numCrossings, int left, int right, int color, int extraAlpha) {
+        byte red = (byte) (color >> 16);
+        byte green = (byte) (color >> 8);
+        byte blue = (byte) color;
+        int dstFactor = 255 - extraAlpha;
+        for (int c = 0; (c + 1) < numCrossings; c += 2) {
+            int spanLeft = Math.max(crossings[c], left);
+            int spanRight = Math.min(crossings[c + 1], right);
+            int i = (rowStart + spanLeft) * 4;
+            int end = (rowStart + spanRight) * 4;
+            if (dstFactor == 0) {
+                while (i < end) {
+                    buffer[i++] = (byte) 0xFF;
+                    buffer[i++] = blue;
+                    buffer[i++] = green;
+                    buffer[i++] = red;
+                }
+            } else {
+                while (i < end) {
+                    i++;
+                    buffer[i] = (byte) ((blue & 0x0FF) + mul8(dstFactor, buffer[i] & 0x0FF));
+                    i++;
+                    buffer[i] = (byte) ((green & 0x0FF) + mul8(dstFactor, buffer[i] & 0x0FF));
+                    i++;
+                    buffer[i] = (byte) ((red & 0x0FF) + mul8(dstFactor, buffer[i] & 0x0FF));
+                    i++;
+                }
+            }
+        }
+    }
+
+    /**
+     * blends the spans between pairs of crossings on one row of a packed RGB buffer, clipped to a range of columns. The
+     * unused top byte is always left zero, whereas Java2D sets it or not depending on which of its loops was used.
+     *
+     * @param buffer
+     *            the RGB ints of the image
+     * @param rowStart
+     *            the pixel index of the first pixel of the row
+     * @param crossings
+     *            the sorted x positions where the polygon's edges cross the row
+     * @param numCrossings
+     *            the number of crossings
+     * @param left
+     *            the first column that may be drawn
+     * @param right
+     *            the column after the last that may be drawn
+     * @param color
+     *            the premultiplied color from {@link #getBlendColor}
+     * @param extraAlpha
+     *            the 8 bit alpha of the polygon
+     */
+    static void fillSpans(int[] buffer, int rowStart, int[] crossings, int numCrossings, int left, int right, int color, int extraAlpha) {
+        int red = (color >> 16) & 0x0FF;
+        int green = (color >> 8) & 0x0FF;
+        int blue = color & 0x0FF;
+        int dstFactor = 255 - extraAlpha;
+        for (int c = 0; (c + 1) < numCrossings; c += 2) {
+            int spanLeft = Math.max(crossings[c], left);
+            int spanRight = Math.min(crossings[c + 1], right);
+            int end = rowStart + spanRight;
+            if (dstFactor == 0) {
+                for (int i = rowStart + spanLeft; i < end; i++) {
+                    buffer[i] = color;
+                }
+            } else {
+                for (int i = rowStart + spanLeft; i < end; i++) {
+                    int pixel = buffer[i];
+                    buffer[i] = ((red + mul8(dstFactor, (pixel >> 16) & 0x0FF)) << 16) | ((green + mul8(dstFactor, (pixel >> 8) & 0x0FF)) << 8)
+                            | (blue + mul8(dstFactor, pixel & 0x0FF));
+                }
+            }
+        }
+    }
+
+    /**
+     * multiplies two 8 bit values treating them as fractions of 255, rounding the way Java2D's mul8table does
+     *
+     * @param a
+     *            the first value (0 - 255)
+     * @param b
+     *            the second value (0 - 255)
+     * @return a * b / 255 rounded
+     */
+    static int mul8(int a, int b) {
+        return ((a * b * 0x010101) + 0x800000) >>> 24;
+    }
+}
@@ -37,4 +37,15 @@ public interface Score extends Cloneable, Serializable {
      * @return a clone of this score
      */
     Score clone();
+
+    /**
+     * returns a score with the same value that will not change, for a caller that keeps the score, such as when a
+     * candidate is admitted to a generation. Scores are usually already fixed, so by default this is the score itself,
+     * but a scratch score that is reused for the next candidate is copied.
+     *
+     * @return a score that will not change
+     */
+    default Score freeze() {
+        return this;
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a bounded cache of the scores of genomes that have already been evaluated, keyed by their {@link GenomeHash}, so that a
+ * candidate that duplicates one seen before need not be rendered and scored again. The cache is a set associative table,
+ * where each hash can only be held in one small set of slots, and a full set makes room using the CLOCK algorithm, giving
+ * up the first slot that hasn't been looked up since the hand last passed it. The sets are split among stripes, each with
+ * its own lock, so that workers seldom wait for each other.
+ */
+class ScoreCache {
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 16;
+
+    private final int numSets;
+    private final long[] keys;
+    private final Score[] scores;
+    private final boolean[] referenced;
+    private final int[] hands;
+    private final Object[] locks;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * creates an empty cache
+     *
+     * @param capacity
+     *            the most scores to hold, which is rounded up to a whole number of sets
+     */
+    ScoreCache(int capacity) {
+        numSets = Math.max(STRIPES, (capacity + WAYS - 1) / WAYS);
+        keys = new long[numSets * WAYS];
+        scores = new Score[numSets * WAYS];
+        referenced = new boolean[numSets * WAYS];
+        hands = new int[numSets];
+        locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * returns the score of a genome, if it is in the cache
+     *
+     * @param genomeHash
+     *            the hash of the genome
+     * @return the score of the genome, or null if it isn't cached
+     */
+    Score get(long genomeHash) {
+        lookups.increment();
+        int set = getSet(genomeHash);
+        synchronized (locks[set % STRIPES]) {
+            int slot = findSlot(set, genomeHash);
+            if (slot < 0) {
+                return null;
+            }
+            referenced[slot] = true;
+            hits.increment();
+            return scores[slot];
+        }
+    }
+
+    /**
+     * adds the score of a genome to the cache, replacing the score it had, or evicting another genome if its set is full
+     *
+     * @param genomeHash
+     *            the hash of the genome
+     * @param score
+     *            the score of the genome, which must not change afterwards
+     */
+    void put(long genomeHash, Score score) {
+        int set = getSet(genomeHash);
+        synchronized (locks[set % STRIPES]) {
+            int slot = findSlot(set, genomeHash);
+            if (slot < 0) {
+                slot = findVictim(set);
+                keys[slot] = genomeHash;
+            }
+            scores[slot] = score;
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * returns the fraction of lookups that found a score
+     *
+     * @return the hit rate, from 0 to 1
+     */
+    double getHitRate() {
+        long numLookups = lookups.sum();
+        return (numLookups == 0) ? 0.0 : ((double) hits.sum() / numLookups);
+    }
+
+    /**
+     * returns the number of lookups that found a score
+     *
+     * @return the number of hits
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * returns the number of lookups made
+     *
+     * @return the number of lookups
+     */
+    long getLookups() {
+        return lookups.sum();
+    }
+
+    private int getSet(long genomeHash) {
+        // the hash is already well mixed, so its high bits pick the set
+        return (int) ((genomeHash >>> 32) % numSets);
+    }
+
+    private int findSlot(int set, long genomeHash) {
+        int first = set * WAYS;
+        for (int slot = first; slot < (first + WAYS); slot++) {
+            if ((scores[slot] != null) && (keys[slot] == genomeHash)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findVictim(int set) {
+        int first = set * WAYS;
+        for (int slot = first; slot < (first + WAYS); slot++) {
+            if (scores[slot] == null) {
+                return slot;
+            }
+        }
+
+        while (true) {
+            int slot = first + hands[set];
+            hands[set] = (hands[set] + 1) % WAYS;
+            if (!referenced[slot]) {
+                return slot;
+            }
+            referenced[slot] = false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Score cache: " + getHits() + " of " + getLookups() + " lookups were duplicates (" + Math.round(getHitRate() * 100) + "%)";
+    }
+}
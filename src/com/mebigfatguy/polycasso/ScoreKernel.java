@@ -0,0 +1,103 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+/**
+ * the inner loop of scoring, summing the squared error between a run of target pixels and test pixels. This class is the
+ * scalar version that runs everywhere. On Java 17 and up, when the jdk.incubator.vector module is added to the runtime,
+ * a vectorized subclass from the multi-release part of the jar is used instead, which returns exactly the same sums.
+ */
+class ScoreKernel {
+
+    private static final String VECTOR_KERNEL_CLASS = "com.mebigfatguy.polycasso.VectorScoreKernel";
+    private static final ScoreKernel INSTANCE = loadKernel();
+
+    /**
+     * returns the fastest kernel available on this runtime
+     *
+     * @return the score kernel
+     */
+    static ScoreKernel getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * returns the squared error of a run of 4 byte ABGR pixels, summed over the blue, green and red channels
+     *
+     * @param target
+     *            the bytes of the target image
+     * @param test
+     *            the bytes of the test image
+     * @param start
+     *            the index of the alpha byte of the first pixel
+     * @param end
+     *            the index just past the last pixel
+     * @return the squared error
+     */
+    long error(byte[] target, byte[] test, int start, int end) {
+        long error = 0L;
+        // index 0 is alpha, start at 1 (blue)
+        for (int i = start + 1; i < end; i += 2) {
+            int blueError = (target[i] & 0x0FF) - (test[i++] & 0x0FF);
+            int greenError = (target[i] & 0x0FF) - (test[i++] & 0x0FF);
+            int redError = (target[i] & 0x0FF) - (test[i] & 0x0FF);
+            error += (blueError * blueError) + (greenError * greenError) + (redError * redError);
+        }
+        return error;
+    }
+
+    /**
+     * returns the squared error of a run of packed RGB pixels, summed over the three channels
+     *
+     * @param target
+     *            the pixels of the target image
+     * @param test
+     *            the pixels of the test image
+     * @param start
+     *            the index of the first pixel
+     * @param end
+     *            the index just past the last pixel
+     * @return the squared error
+     */
+    long error(int[] target, int[] test, int start, int end) {
+        long error = 0L;
+        for (int i = start; i < end; i++) {
+            error += DefaultFeedback.pixelError(target[i], test[i]);
+        }
+        return error;
+    }
+
+    private static ScoreKernel loadKernel() {
+        try {
+            ScoreKernel kernel = (ScoreKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+            if (Polycasso.DEBUG) {
+                System.out.println("Scoring with " + kernel);
+            }
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not running on Java 17 with jdk.incubator.vector, so stay scalar
+            return new ScoreKernel();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar score kernel";
+    }
+}
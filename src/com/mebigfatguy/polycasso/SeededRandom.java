@@ -0,0 +1,96 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * a source of random numbers for one thread, drawn from a {@link SplittableRandom}. Each worker, and each island's generation handler, is given a stream of
+ * its own split from one master, so no stream is shared between threads, and all the streams of a run follow from the master seed. Being a {@link Random},
+ * it can be passed wherever one is used, but unlike one it is not thread safe.
+ */
+public final class SeededRandom extends Random {
+
+    private static final long serialVersionUID = -6473206812537205471L;
+
+    private SplittableRandom stream;
+
+    private SeededRandom(SplittableRandom splittableRandom) {
+        stream = splittableRandom;
+    }
+
+    /**
+     * creates the master random of a run
+     *
+     * @param seed
+     *            the master seed, or 0 for a different run every time
+     * @return the master random
+     */
+    public static SeededRandom create(long seed) {
+        return new SeededRandom((seed == 0) ? new SplittableRandom() : new SplittableRandom(seed));
+    }
+
+    /**
+     * splits off a stream of random numbers for another thread, that is independent of this one's
+     *
+     * @return the new stream
+     */
+    public SeededRandom split() {
+        return new SeededRandom(stream.split());
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Random's constructor sets a seed before the stream exists
+        if (stream != null) {
+            stream = new SplittableRandom(seed);
+        }
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (stream.nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return stream.nextInt();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return stream.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return stream.nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        return stream.nextDouble();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return stream.nextBoolean();
+    }
+}
@@ -19,6 +19,8 @@
 package com.mebigfatguy.polycasso;
 
 import java.awt.Dimension;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -38,6 +40,23 @@ public class Settings implements Cloneable, Serializable {
     private int maxPoints;
     private int maxPtMovement;
     private int maxColorChange;
+    private RendererType rendererType;
+    private RenderMode renderMode;
+    private int layerInterval;
+    private int layerCacheSize;
+    private PixelLayout pixelLayout;
+    private int pyramidLevels;
+    private int plateauGenerations;
+    private double plateauImprovement;
+    private int screenRowStep;
+    private double screenMargin;
+    private int scoreCacheSize;
+    private boolean useErrorTargeting;
+    private boolean useResidualSampling;
+    private int islandCount;
+    private int migrationInterval;
+    private MigrationTopology migrationTopology;
+    private long randomSeed;
 
     private String proxyHost;
     private int proxyPort;
@@ -56,6 +75,23 @@ public class Settings implements Cloneable, Serializable {
         maxPoints = 7;
         maxPtMovement = 20;
         maxColorChange = 40;
+        rendererType = RendererType.Scanline;
+        renderMode = RenderMode.DirtyRect;
+        layerInterval = 10;
+        layerCacheSize = 64;
+        pixelLayout = PixelLayout.ByteABGR;
+        pyramidLevels = 1;
+        plateauGenerations = 20;
+        plateauImprovement = 0.01;
+        screenRowStep = 1;
+        screenMargin = 0.25;
+        scoreCacheSize = 4096;
+        useErrorTargeting = false;
+        useResidualSampling = false;
+        islandCount = 1;
+        migrationInterval = 10;
+        migrationTopology = MigrationTopology.Ring;
+        randomSeed = 0;
         proxyHost = null;
         proxyPort = 0;
     }
@@ -264,6 +300,337 @@ public class Settings implements Cloneable, Serializable {
         return maxColorChange;
     }
 
+    /**
+     * sets the backend used to draw candidate images
+     *
+     * @param type
+     *            the renderer type
+     */
+    public void setRendererType(RendererType type) {
+        rendererType = type;
+    }
+
+    /**
+     * gets the backend used to draw candidate images
+     *
+     * @return the renderer type
+     */
+    public RendererType getRendererType() {
+        return rendererType;
+    }
+
+    /**
+     * sets whether candidates are drawn in full or only in the area changed from their parent
+     *
+     * @param mode
+     *            the render mode
+     */
+    public void setRenderMode(RenderMode mode) {
+        renderMode = mode;
+    }
+
+    /**
+     * gets whether candidates are drawn in full or only in the area changed from their parent
+     *
+     * @return the render mode
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * sets the number of polygons between cached layer checkpoints in LayerCache render mode
+     *
+     * @param interval
+     *            the number of polygons between checkpoints
+     */
+    public void setLayerInterval(int interval) {
+        layerInterval = interval;
+    }
+
+    /**
+     * gets the number of polygons between cached layer checkpoints in LayerCache render mode
+     *
+     * @return the number of polygons between checkpoints
+     */
+    public int getLayerInterval() {
+        return layerInterval;
+    }
+
+    /**
+     * sets the memory budget, in megabytes, for each worker's layer cache in LayerCache render mode
+     *
+     * @param megabytes
+     *            the layer cache size
+     */
+    public void setLayerCacheSize(int megabytes) {
+        layerCacheSize = megabytes;
+    }
+
+    /**
+     * gets the memory budget, in megabytes, for each worker's layer cache in LayerCache render mode
+     *
+     * @return the layer cache size
+     */
+    public int getLayerCacheSize() {
+        return layerCacheSize;
+    }
+
+    /**
+     * sets how the pixels of the target, candidate and exported images are laid out in memory
+     *
+     * @param layout
+     *            the pixel layout
+     */
+    public void setPixelLayout(PixelLayout layout) {
+        pixelLayout = layout;
+    }
+
+    /**
+     * gets how the pixels of the target, candidate and exported images are laid out in memory
+     *
+     * @return the pixel layout
+     */
+    public PixelLayout getPixelLayout() {
+        return pixelLayout;
+    }
+
+    /**
+     * sets the number of resolutions the image is evolved at, each half the size of the next, starting with the coarsest. A
+     * value of 1 evolves at the full image size only.
+     *
+     * @param levels
+     *            the number of resolution levels
+     */
+    public void setPyramidLevels(int levels) {
+        pyramidLevels = levels;
+    }
+
+    /**
+     * gets the number of resolutions the image is evolved at, each half the size of the next, starting with the coarsest
+     *
+     * @return the number of resolution levels
+     */
+    public int getPyramidLevels() {
+        return pyramidLevels;
+    }
+
+    /**
+     * sets how many generations the best score may go without improving by the plateau improvement, before evolution moves
+     * on to the next finer resolution
+     *
+     * @param generations
+     *            the number of generations without improvement
+     */
+    public void setPlateauGenerations(int generations) {
+        plateauGenerations = generations;
+    }
+
+    /**
+     * gets how many generations the best score may go without improving by the plateau improvement, before evolution moves
+     * on to the next finer resolution
+     *
+     * @return the number of generations without improvement
+     */
+    public int getPlateauGenerations() {
+        return plateauGenerations;
+    }
+
+    /**
+     * sets the fraction the best score must improve by to count as an improvement for plateau detection
+     *
+     * @param improvement
+     *            the fraction of the best score
+     */
+    public void setPlateauImprovement(double improvement) {
+        plateauImprovement = improvement;
+    }
+
+    /**
+     * gets the fraction the best score must improve by to count as an improvement for plateau detection
+     *
+     * @return the fraction of the best score
+     */
+    public double getPlateauImprovement() {
+        return plateauImprovement;
+    }
+
+    /**
+     * sets the spacing of the rows that are drawn and scored to screen a candidate in Fused render mode, before the whole
+     * changed area is. A value of 1 turns screening off.
+     *
+     * @param rowStep
+     *            the number of rows from one screened row to the next
+     */
+    public void setScreenRowStep(int rowStep) {
+        screenRowStep = rowStep;
+    }
+
+    /**
+     * gets the spacing of the rows that are drawn and scored to screen a candidate in Fused render mode
+     *
+     * @return the number of rows from one screened row to the next
+     */
+    public int getScreenRowStep() {
+        return screenRowStep;
+    }
+
+    /**
+     * sets how far off, as a fraction of the estimated change in score, a screening estimate is allowed to be. Candidates
+     * are only rejected if they would miss the elite cutoff even when the estimate is this much too pessimistic.
+     *
+     * @param margin
+     *            the fraction of the estimated change in score
+     */
+    public void setScreenMargin(double margin) {
+        screenMargin = margin;
+    }
+
+    /**
+     * gets how far off, as a fraction of the estimated change in score, a screening estimate is allowed to be
+     *
+     * @return the fraction of the estimated change in score
+     */
+    public double getScreenMargin() {
+        return screenMargin;
+    }
+
+    /**
+     * sets how many scores of genomes already evaluated are remembered, so that duplicate candidates can be skipped
+     *
+     * @param size
+     *            the number of scores to remember
+     */
+    public void setScoreCacheSize(int size) {
+        scoreCacheSize = size;
+    }
+
+    /**
+     * gets how many scores of genomes already evaluated are remembered
+     *
+     * @return the number of scores to remember
+     */
+    public int getScoreCacheSize() {
+        return scoreCacheSize;
+    }
+
+    /**
+     * sets whether to pick the polygon to mutate from where the parent's error is, rather than uniformly
+     *
+     * @param errorTargeting
+     *            whether to use error targeting
+     */
+    public void setUseErrorTargeting(boolean errorTargeting) {
+        useErrorTargeting = errorTargeting;
+    }
+
+    /**
+     * gets whether to pick the polygon to mutate from where the parent's error is
+     *
+     * @return whether to use error targeting
+     */
+    public boolean isUseErrorTargeting() {
+        return useErrorTargeting;
+    }
+
+    /**
+     * sets whether to put new polygons and points where the best image is furthest from the target, rather than uniformly
+     *
+     * @param residualSampling
+     *            whether to use residual sampling
+     */
+    public void setUseResidualSampling(boolean residualSampling) {
+        useResidualSampling = residualSampling;
+    }
+
+    /**
+     * gets whether to put new polygons and points where the best image is furthest from the target
+     *
+     * @return whether to use residual sampling
+     */
+    public boolean isUseResidualSampling() {
+        return useResidualSampling;
+    }
+
+    /**
+     * sets how many islands the workers are split between, each evolving a generation of its own, with only the best
+     * members migrating between them. One island means all the workers share a generation.
+     *
+     * @param count
+     *            the number of islands
+     */
+    public void setIslandCount(int count) {
+        islandCount = count;
+    }
+
+    /**
+     * gets how many islands the workers are split between
+     *
+     * @return the number of islands
+     */
+    public int getIslandCount() {
+        return islandCount;
+    }
+
+    /**
+     * sets how many generations an island evolves between sending its best members to another island
+     *
+     * @param interval
+     *            the number of generations between migrations
+     */
+    public void setMigrationInterval(int interval) {
+        migrationInterval = interval;
+    }
+
+    /**
+     * gets how many generations an island evolves between sending its best members to another island
+     *
+     * @return the number of generations between migrations
+     */
+    public int getMigrationInterval() {
+        return migrationInterval;
+    }
+
+    /**
+     * sets which island each island sends its best members to
+     *
+     * @param topology
+     *            the migration topology
+     */
+    public void setMigrationTopology(MigrationTopology topology) {
+        migrationTopology = topology;
+    }
+
+    /**
+     * gets which island each island sends its best members to
+     *
+     * @return the migration topology
+     */
+    public MigrationTopology getMigrationTopology() {
+        return migrationTopology;
+    }
+
+    /**
+     * sets the master seed that all the random numbers of a run follow from. Runs with the same seed and settings repeat exactly when there is one worker
+     * thread, and without residual sampling, whose picture of the error is refreshed by the clock. With more workers, each still draws the same numbers, but
+     * the order in which they add to a shared generation differs from run to run.
+     *
+     * @param seed
+     *            the master seed, or 0 for a different run every time
+     */
+    public void setRandomSeed(long seed) {
+        randomSeed = seed;
+    }
+
+    /**
+     * gets the master seed that all the random numbers of a run follow from
+     *
+     * @return the master seed, or 0 for a different run every time
+     */
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
     /**
      * gets the proxy host
      *
@@ -302,4 +669,60 @@ public class Settings implements Cloneable, Serializable {
         this.proxyPort = proxyPort;
     }
 
+    /**
+     * reads a saved settings object, filling in defaults for options that did not exist when it was saved
+     *
+     * @param ois
+     *            the stream to read from
+     * @throws IOException
+     *             if the stream can't be read
+     * @throws ClassNotFoundException
+     *             if a saved class is not found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        Settings defaults = new Settings();
+        if (rendererType == null) {
+            rendererType = defaults.rendererType;
+        }
+        if (renderMode == null) {
+            renderMode = defaults.renderMode;
+        }
+        if (layerInterval <= 0) {
+            layerInterval = defaults.layerInterval;
+        }
+        if (layerCacheSize <= 0) {
+            layerCacheSize = defaults.layerCacheSize;
+        }
+        if (pixelLayout == null) {
+            pixelLayout = defaults.pixelLayout;
+        }
+        if (pyramidLevels <= 0) {
+            pyramidLevels = defaults.pyramidLevels;
+        }
+        if (plateauGenerations <= 0) {
+            plateauGenerations = defaults.plateauGenerations;
+        }
+        if (plateauImprovement <= 0) {
+            plateauImprovement = defaults.plateauImprovement;
+        }
+        if (screenRowStep <= 0) {
+            screenRowStep = defaults.screenRowStep;
+        }
+        if (screenMargin <= 0) {
+            screenMargin = defaults.screenMargin;
+        }
+        if (scoreCacheSize <= 0) {
+            scoreCacheSize = defaults.scoreCacheSize;
+        }
+        if (islandCount <= 0) {
+            islandCount = defaults.islandCount;
+        }
+        if (migrationInterval <= 0) {
+            migrationInterval = defaults.migrationInterval;
+        }
+        if (migrationTopology == null) {
+            migrationTopology = defaults.migrationTopology;
+        }
+    }
 }
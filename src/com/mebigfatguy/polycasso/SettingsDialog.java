@@ -31,6 +31,7 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -64,6 +65,11 @@ public class SettingsDialog extends JDialog {
     private JTextField maxPolygonPointsField;
     private JTextField maxPtMoveField;
     private JTextField maxColorChangeField;
+    private JComboBox<RendererType> rendererBox;
+    private JComboBox<RenderMode> renderModeBox;
+    private JComboBox<PixelLayout> pixelLayoutBox;
+    private JTextField islandCountField;
+    private JTextField randomSeedField;
     private SelectAllFocuser focuser;
     private boolean isOK;
 
@@ -114,6 +120,8 @@ public class SettingsDialog extends JDialog {
         centerPanel.add(createGeneticsPanel());
         centerPanel.add(Box.createVerticalStrut(10));
         centerPanel.add(createOptionsPanel());
+        centerPanel.add(Box.createVerticalStrut(10));
+        centerPanel.add(createEnginePanel());
 
         cp.add(centerPanel, BorderLayout.CENTER);
         cp.add(createControlPanel(), BorderLayout.SOUTH);
@@ -183,9 +191,63 @@ public class SettingsDialog extends JDialog {
         optPanel.add(maxColorChangeField, cc.xy(7, 11));
         maxColorChangeField.addFocusListener(focuser);
 
+        return optPanel;
+    }
+
+    /**
+     * creates the engine panel, for how candidate images are drawn and evolved
+     *
+     * @return the engine panel
+     */
+    private JPanel createEnginePanel() {
+        JPanel enginePanel = new JPanel();
+        enginePanel.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createTitledBorder(PolycassoBundle.getString(PolycassoBundle.Key.EngineOptions)),
+                BorderFactory.createEmptyBorder(10, 10, 10, 10)));
+        enginePanel.setLayout(new FormLayout("pref, 3dlu, 100px", "pref, 1dlu, pref, 1dlu, pref, 1dlu, pref, 1dlu, pref"));
+        CellConstraints cc = new CellConstraints();
+
+        JLabel rendererLabel = new JLabel(PolycassoBundle.getString(PolycassoBundle.Key.Renderer));
+        enginePanel.add(rendererLabel, cc.xy(1, 1));
+        rendererBox = new JComboBox<>(RendererType.values());
+        rendererBox.setToolTipText(PolycassoBundle.getString(PolycassoBundle.Key.RendererToolTip));
+        rendererLabel.setLabelFor(rendererBox);
+        enginePanel.add(rendererBox, cc.xy(3, 1));
+
+        JLabel renderModeLabel = new JLabel(PolycassoBundle.getString(PolycassoBundle.Key.RenderMode));
+        enginePanel.add(renderModeLabel, cc.xy(1, 3));
+        renderModeBox = new JComboBox<>(RenderMode.values());
+        renderModeBox.setToolTipText(PolycassoBundle.getString(PolycassoBundle.Key.RenderModeToolTip));
+        renderModeLabel.setLabelFor(renderModeBox);
+        enginePanel.add(renderModeBox, cc.xy(3, 3));
+
+        JLabel pixelLayoutLabel = new JLabel(PolycassoBundle.getString(PolycassoBundle.Key.PixelLayout));
+        enginePanel.add(pixelLayoutLabel, cc.xy(1, 5));
+        pixelLayoutBox = new JComboBox<>(PixelLayout.values());
+        pixelLayoutBox.setToolTipText(PolycassoBundle.getString(PolycassoBundle.Key.PixelLayoutToolTip));
+        pixelLayoutLabel.setLabelFor(pixelLayoutBox);
+        enginePanel.add(pixelLayoutBox, cc.xy(3, 5));
+
+        JLabel islandCountLabel = new JLabel(PolycassoBundle.getString(PolycassoBundle.Key.IslandCount));
+        enginePanel.add(islandCountLabel, cc.xy(1, 7));
+        islandCountField = new JTextField(4);
+        islandCountField.setToolTipText(PolycassoBundle.getString(PolycassoBundle.Key.IslandCountToolTip));
+        islandCountField.setDocument(new IntegerDocument());
+        islandCountLabel.setLabelFor(islandCountField);
+        enginePanel.add(islandCountField, cc.xy(3, 7));
+        islandCountField.addFocusListener(focuser);
+
+        JLabel randomSeedLabel = new JLabel(PolycassoBundle.getString(PolycassoBundle.Key.RandomSeed));
+        enginePanel.add(randomSeedLabel, cc.xy(1, 9));
+        randomSeedField = new JTextField(4);
+        randomSeedField.setToolTipText(PolycassoBundle.getString(PolycassoBundle.Key.RandomSeedToolTip));
+        randomSeedField.setDocument(new IntegerDocument());
+        randomSeedLabel.setLabelFor(randomSeedField);
+        enginePanel.add(randomSeedField, cc.xy(3, 9));
+        randomSeedField.addFocusListener(focuser);
+
         populateValues();
 
-        return optPanel;
+        return enginePanel;
     }
 
     private JPanel createGeneticsPanel() {
@@ -261,6 +323,11 @@ public class SettingsDialog extends JDialog {
         maxPolygonPointsField.setText(String.valueOf(dlgSettings.getMaxPoints()));
         maxPtMoveField.setText(String.valueOf(dlgSettings.getMaxPtMovement()));
         maxColorChangeField.setText(String.valueOf(dlgSettings.getMaxColorChange()));
+        rendererBox.setSelectedItem(dlgSettings.getRendererType());
+        renderModeBox.setSelectedItem(dlgSettings.getRenderMode());
+        pixelLayoutBox.setSelectedItem(dlgSettings.getPixelLayout());
+        islandCountField.setText(String.valueOf(dlgSettings.getIslandCount()));
+        randomSeedField.setText(String.valueOf(dlgSettings.getRandomSeed()));
     }
 
     /**
@@ -326,6 +393,11 @@ public class SettingsDialog extends JDialog {
                 dlgSettings.setMaxPoints(Integer.parseInt(maxPolygonPointsField.getText()));
                 dlgSettings.setMaxPtMovement(Integer.parseInt(maxPtMoveField.getText()));
                 dlgSettings.setMaxColorChange(Integer.parseInt(maxColorChangeField.getText()));
+                dlgSettings.setRendererType((RendererType) rendererBox.getSelectedItem());
+                dlgSettings.setRenderMode((RenderMode) renderModeBox.getSelectedItem());
+                dlgSettings.setPixelLayout((PixelLayout) pixelLayoutBox.getSelectedItem());
+                dlgSettings.setIslandCount(Integer.parseInt(islandCountField.getText()));
+                dlgSettings.setRandomSeed(Long.parseLong(randomSeedField.getText()));
                 if (validateSettings()) {
                     isOK = true;
                     dispose();
@@ -406,6 +478,9 @@ public class SettingsDialog extends JDialog {
         } else if (dlgSettings.getMaxColorChange() < 5) {
             maxColorChangeField.setText("5");
             maxColorChangeField.requestFocus();
+        } else if (dlgSettings.getIslandCount() < 1) {
+            islandCountField.setText("1");
+            islandCountField.requestFocus();
         } else {
             return true;
         }
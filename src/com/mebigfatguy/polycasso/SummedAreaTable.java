@@ -0,0 +1,141 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Color;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+
+/**
+ * per channel summed-area tables of a target image, so that the sum of the target's red, green or blue over any rectangle,
+ * and so the mean color under any polygon, can be found without visiting the pixels. Each table has one more row and
+ * column than the image, where entry (x, y) holds the sum of all pixels above and to the left of it.
+ */
+class SummedAreaTable {
+
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+    private final int width;
+    private final int height;
+    private final long[][] sums = new long[3][];
+
+    /**
+     * builds the tables for an image
+     *
+     * @param image
+     *            the image to sum, in one of the {@link PixelLayout}s
+     */
+    SummedAreaTable(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        int stride = width + 1;
+        for (int c = 0; c < sums.length; c++) {
+            sums[c] = new long[stride * (height + 1)];
+        }
+
+        Object pixels = PixelLayout.getPixels(image);
+        int[] intPixels = (pixels instanceof int[]) ? (int[]) pixels : null;
+        byte[] bytePixels = (pixels instanceof byte[]) ? (byte[]) pixels : null;
+        long[] red = sums[RED];
+        long[] green = sums[GREEN];
+        long[] blue = sums[BLUE];
+        for (int y = 0; y < height; y++) {
+            long rowRed = 0, rowGreen = 0, rowBlue = 0;
+            int above = y * stride;
+            int entry = above + stride;
+            for (int x = 0; x < width; x++) {
+                int pixel = (y * width) + x;
+                if (intPixels != null) {
+                    rowRed += (intPixels[pixel] >> 16) & 0x0FF;
+                    rowGreen += (intPixels[pixel] >> 8) & 0x0FF;
+                    rowBlue += intPixels[pixel] & 0x0FF;
+                } else {
+                    rowBlue += bytePixels[(pixel * 4) + 1] & 0x0FF;
+                    rowGreen += bytePixels[(pixel * 4) + 2] & 0x0FF;
+                    rowRed += bytePixels[(pixel * 4) + 3] & 0x0FF;
+                }
+                red[entry + x + 1] = red[above + x + 1] + rowRed;
+                green[entry + x + 1] = green[above + x + 1] + rowGreen;
+                blue[entry + x + 1] = blue[above + x + 1] + rowBlue;
+            }
+        }
+    }
+
+    /**
+     * returns the sum of one channel over a rectangle of the image
+     *
+     * @param channel
+     *            0 for red, 1 for green or 2 for blue
+     * @param left
+     *            the first column
+     * @param top
+     *            the first row
+     * @param right
+     *            the column after the last
+     * @param bottom
+     *            the row after the last
+     * @return the sum of the channel
+     */
+    long getSum(int channel, int left, int top, int right, int bottom) {
+        long[] table = sums[channel];
+        int stride = width + 1;
+        return (table[(bottom * stride) + right] - table[(top * stride) + right] - table[(bottom * stride) + left]) + table[(top * stride) + left];
+    }
+
+    /**
+     * returns the mean color of the image over the pixels a polygon covers, finding the covered spans the same way the
+     * renderer does
+     *
+     * @param polygon
+     *            the polygon
+     * @return the mean color, or null if the polygon covers no pixels
+     */
+    Color getMeanColor(Polygon polygon) {
+        EdgeTable edges = new EdgeTable();
+        edges.clear();
+        edges.addPolygon(polygon, 0, height);
+        if (edges.isEmpty()) {
+            return null;
+        }
+
+        int[] crossings = new int[edges.getMaxPolygonEdges()];
+        long red = 0, green = 0, blue = 0, pixels = 0;
+        int lastRow = Math.min(edges.getBottom(), height);
+        for (int y = Math.max(edges.getTop(), 0); y < lastRow; y++) {
+            int numCrossings = edges.collectCrossings(0, y, crossings);
+            for (int c = 0; (c + 1) < numCrossings; c += 2) {
+                int spanLeft = Math.max(crossings[c], 0);
+                int spanRight = Math.min(crossings[c + 1], width);
+                if (spanLeft < spanRight) {
+                    red += getSum(RED, spanLeft, y, spanRight, y + 1);
+                    green += getSum(GREEN, spanLeft, y, spanRight, y + 1);
+                    blue += getSum(BLUE, spanLeft, y, spanRight, y + 1);
+                    pixels += spanRight - spanLeft;
+                }
+            }
+        }
+
+        if (pixels == 0) {
+            return null;
+        }
+        return new Color((int) ((red + (pixels / 2)) / pixels), (int) ((green + (pixels / 2)) / pixels), (int) ((blue + (pixels / 2)) / pixels));
+    }
+}
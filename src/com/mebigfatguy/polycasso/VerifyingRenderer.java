@@ -0,0 +1,175 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * a renderer used to check the scanline renderer for pixel equivalence against Java2D. Each image is drawn by both, the
+ * scanline result is what is kept, and any pixels that differ are counted (and reported in debug mode).
+ */
+public class VerifyingRenderer implements Renderer {
+
+    private final Renderer primary = new ScanlineRenderer();
+    private final Renderer reference = new Java2DRenderer();
+    private BufferedImage referenceImage;
+    private long imagesRendered;
+    private long mismatchedImages;
+    private long mismatchedPixels;
+
+    /**
+     * draws the polygons with the scanline renderer, and compares the result to what Java2D draws
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData) {
+        primary.render(image, polygonData);
+        reference.render(getReferenceImage(image), polygonData);
+        compare(image);
+    }
+
+    /**
+     * redraws the clip area with the scanline renderer, and compares the result to what Java2D draws starting from the
+     * same image
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     * @param clip
+     *            the area of the image to redraw
+     */
+    @Override
+    public void render(BufferedImage image, List<PolygonData> polygonData, Rectangle clip) {
+        BufferedImage refImage = copyToReferenceImage(image);
+        primary.render(image, polygonData, clip);
+        reference.render(refImage, polygonData, clip);
+        compare(image);
+    }
+
+    /**
+     * composites polygons with the scanline renderer, and compares the result to what Java2D draws starting from the same
+     * image
+     *
+     * @param image
+     *            the image to draw on, which must be of type TYPE_4BYTE_ABGR or TYPE_INT_RGB
+     * @param polygonData
+     *            the polygons to draw
+     * @param fromIndex
+     *            the index of the first polygon to draw
+     * @param clip
+     *            the area of the image to draw in
+     */
+    @Override
+    public void draw(BufferedImage image, List<PolygonData> polygonData, int fromIndex, Rectangle clip) {
+        BufferedImage refImage = copyToReferenceImage(image);
+        primary.draw(image, polygonData, fromIndex, clip);
+        reference.draw(refImage, polygonData, fromIndex, clip);
+        compare(image);
+    }
+
+    private BufferedImage copyToReferenceImage(BufferedImage image) {
+        BufferedImage refImage = getReferenceImage(image);
+        CandidateCanvas.copyAll(image, refImage);
+        return refImage;
+    }
+
+    private BufferedImage getReferenceImage(BufferedImage image) {
+        if ((referenceImage == null) || (referenceImage.getWidth() != image.getWidth()) || (referenceImage.getHeight() != image.getHeight())
+                || (referenceImage.getType() != image.getType())) {
+            reference.dispose();
+            referenceImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        }
+        return referenceImage;
+    }
+
+    private void compare(BufferedImage image) {
+        Object actualPixels = PixelLayout.getPixels(image);
+        int badPixels = 0;
+        if (actualPixels instanceof int[]) {
+            int[] actual = (int[]) actualPixels;
+            int[] expected = (int[]) PixelLayout.getPixels(referenceImage);
+            for (int i = 0; i < actual.length; i++) {
+                // the top byte of an int rgb pixel is unused, and Java2D doesn't write it consistently
+                if (((actual[i] ^ expected[i]) & 0x00FFFFFF) != 0) {
+                    badPixels++;
+                }
+            }
+        } else {
+            byte[] actual = (byte[]) actualPixels;
+            byte[] expected = (byte[]) PixelLayout.getPixels(referenceImage);
+            for (int i = 0; i < actual.length; i += 4) {
+                if ((actual[i] != expected[i]) || (actual[i + 1] != expected[i + 1]) || (actual[i + 2] != expected[i + 2]) || (actual[i + 3] != expected[i + 3])) {
+                    badPixels++;
+                }
+            }
+        }
+
+        imagesRendered++;
+        if (badPixels > 0) {
+            mismatchedImages++;
+            mismatchedPixels += badPixels;
+            if (Polycasso.DEBUG) {
+                System.out.println("Scanline renderer differed from Java2D in " + badPixels + " pixels (" + mismatchedImages + " of " + imagesRendered + " images)");
+            }
+        }
+    }
+
+    /**
+     * disposes of the reference renderer's resources
+     */
+    @Override
+    public void dispose() {
+        primary.dispose();
+        reference.dispose();
+    }
+
+    /**
+     * returns the number of images that have been compared
+     *
+     * @return the number of images rendered
+     */
+    public long getImagesRendered() {
+        return imagesRendered;
+    }
+
+    /**
+     * returns the number of images that had at least one pixel differ from Java2D
+     *
+     * @return the number of mismatched images
+     */
+    public long getMismatchedImages() {
+        return mismatchedImages;
+    }
+
+    /**
+     * returns the total number of pixels that differed from Java2D
+     *
+     * @return the number of mismatched pixels
+     */
+    public long getMismatchedPixels() {
+        return mismatchedPixels;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * a score kernel that uses the Vector API to sum squared errors. Bytes are widened to ints a vector at a time, and the
+ * squares are summed in int lanes for each run, so results are identical to the scalar kernel. A run's lanes can't
+ * overflow unless a single grid row is tens of thousands of pixels wide. This class is only built for Java 17 and up, and
+ * is only loaded when the jdk.incubator.vector module is present.
+ */
+class VectorScoreKernel extends ScoreKernel {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int PARTS = BYTES.length() / INTS.length();
+    private static final VectorMask<Integer> COLOR_LANES = colorLanes();
+
+    VectorScoreKernel() {
+        if ((PARTS == 0) || ((INTS.length() % 4) != 0)) {
+            throw new UnsupportedOperationException("Unsupported vector shape " + INTS);
+        }
+    }
+
+    @Override
+    long error(byte[] target, byte[] test, int start, int end) {
+        IntVector sums = IntVector.zero(INTS);
+        int i = start;
+        int vectorEnd = start + (((end - start) / BYTES.length()) * BYTES.length());
+        for (; i < vectorEnd; i += BYTES.length()) {
+            ByteVector targetBytes = ByteVector.fromArray(BYTES, target, i);
+            ByteVector testBytes = ByteVector.fromArray(BYTES, test, i);
+            for (int part = 0; part < PARTS; part++) {
+                IntVector targetInts = ((IntVector) targetBytes.convertShape(VectorOperators.B2I, INTS, part)).and(0x0FF);
+                IntVector testInts = ((IntVector) testBytes.convertShape(VectorOperators.B2I, INTS, part)).and(0x0FF);
+                IntVector diff = targetInts.sub(testInts);
+                sums = sums.add(diff.mul(diff), COLOR_LANES);
+            }
+        }
+
+        return sums.reduceLanesToLong(VectorOperators.ADD) + super.error(target, test, i, end);
+    }
+
+    @Override
+    long error(int[] target, int[] test, int start, int end) {
+        IntVector sums = IntVector.zero(INTS);
+        int i = start;
+        int vectorEnd = start + (((end - start) / INTS.length()) * INTS.length());
+        for (; i < vectorEnd; i += INTS.length()) {
+            IntVector targetPixels = IntVector.fromArray(INTS, target, i);
+            IntVector testPixels = IntVector.fromArray(INTS, test, i);
+
+            IntVector redError = targetPixels.lanewise(VectorOperators.LSHR, 16).and(0x0FF)
+                    .sub(testPixels.lanewise(VectorOperators.LSHR, 16).and(0x0FF));
+            IntVector greenError = targetPixels.lanewise(VectorOperators.LSHR, 8).and(0x0FF)
+                    .sub(testPixels.lanewise(VectorOperators.LSHR, 8).and(0x0FF));
+            IntVector blueError = targetPixels.and(0x0FF).sub(testPixels.and(0x0FF));
+            sums = sums.add(redError.mul(redError)).add(greenError.mul(greenError)).add(blueError.mul(blueError));
+        }
+
+        return sums.reduceLanesToLong(VectorOperators.ADD) + super.error(target, test, i, end);
+    }
+
+    private static VectorMask<Integer> colorLanes() {
+        // ints are widened from 4 byte ABGR pixels, so every fourth lane, starting with the first, is alpha
+        boolean[] lanes = new boolean[INTS.length()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = (i % 4) != 0;
+        }
+        return VectorMask.fromArray(INTS, lanes, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "vector score kernel (" + INTS + ")";
+    }
+}
@@ -0,0 +1,177 @@
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * tests that incrementally rendered candidates match a full render of the same polygons
+ */
+public class CandidateCanvasTest {
+
+    private static final Dimension SIZE = new Dimension(80, 60);
+
+    private Settings settings;
+    private GenerationHandler generationHandler;
+    private BufferedImage targetImage;
+
+    @Before
+    public void setup() {
+        settings = new Settings();
+        settings.setRenderMode(RenderMode.DirtyRect);
+        generationHandler = new GenerationHandler(settings, SIZE);
+
+        Renderer renderer = new ScanlineRenderer();
+        targetImage = new BufferedImage(SIZE.width, SIZE.height, BufferedImage.TYPE_4BYTE_ABGR);
+        Random r = new Random(29L);
+        List<PolygonData> target = new ArrayList<>();
+        for (int p = 0; p < 20; p++) {
+            target.add(PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null));
+        }
+        renderer.render(targetImage, target);
+
+        Feedback feedback = new DefaultFeedback();
+        feedback.setTargetImage(targetImage);
+        BufferedImage image = new BufferedImage(SIZE.width, SIZE.height, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int i = 0; i < settings.getEliteSize(); i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            for (int p = 0; p < 20; p++) {
+                polygons.add(PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null));
+            }
+            renderer.render(image, polygons);
+            generationHandler.addPolygonData(feedback.calculateScore(image, null, null), polygons.toArray(new PolygonData[polygons.size()]));
+        }
+    }
+
+    @Test
+    public void testDirtyRectMatchesFullRender() {
+        assertMatchesFullRender();
+    }
+
+    @Test
+    public void testLayerCacheMatchesFullRender() {
+        settings.setRenderMode(RenderMode.LayerCache);
+        settings.setLayerInterval(3);
+        settings.setLayerCacheSize(1);
+
+        LayerCache layerCache = assertMatchesFullRender();
+        Assert.assertTrue(layerCache.getHits() > 0);
+        Assert.assertTrue(layerCache.getMisses() > 0);
+        Assert.assertTrue(layerCache.getPolygonsSkipped() > 0);
+    }
+
+    @Test
+    public void testFusedMatchesFullRenderAndScore() {
+        settings.setRenderMode(RenderMode.Fused);
+        assertMatchesFullRenderAndScore();
+    }
+
+    @Test
+    public void testChangedAreaScoresMatchFullScore() {
+        assertMatchesFullRenderAndScore();
+
+        settings.setRenderMode(RenderMode.LayerCache);
+        settings.setLayerInterval(3);
+        assertMatchesFullRenderAndScore();
+    }
+
+    @Test
+    public void testScreenedScoresMatchFullScore() {
+        settings.setRenderMode(RenderMode.Fused);
+        settings.setScreenRowStep(4);
+        CandidateScreen screen = assertMatchesFullRenderAndScore();
+        Assert.assertTrue(screen.getScreened() > 0);
+        Assert.assertTrue(screen.getScoringsSaved() > 0);
+    }
+
+    @Test
+    public void testIntRGBMatchesFullRender() {
+        settings.setPixelLayout(PixelLayout.IntRGB);
+        settings.setRenderMode(RenderMode.LayerCache);
+        settings.setLayerInterval(3);
+        settings.setLayerCacheSize(1);
+        assertMatchesFullRender();
+
+        settings.setRenderMode(RenderMode.Fused);
+        assertMatchesFullRenderAndScore();
+    }
+
+    private CandidateScreen assertMatchesFullRenderAndScore() {
+        BufferedImage target = settings.getPixelLayout().createImage(SIZE);
+        Graphics g = target.getGraphics();
+        try {
+            g.drawImage(targetImage, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        Feedback candidateFeedback = (settings.getRenderMode() == RenderMode.Fused) ? new FusedFeedback() : new DefaultFeedback();
+        candidateFeedback.setTargetImage(target);
+        Feedback feedback = new DefaultFeedback();
+        feedback.setTargetImage(target);
+
+        CandidateCanvas canvas = new CandidateCanvas(settings, SIZE);
+        Renderer fullRenderer = new ScanlineRenderer();
+        BufferedImage expected = settings.getPixelLayout().createImage(SIZE);
+        try {
+            Improver improver = new Improver(settings, generationHandler, SIZE);
+            for (int i = 0; i < 500; i++) {
+                ImprovementType type = improver.improveRandomly();
+                List<PolygonData> data = improver.getData();
+                DefaultScore score = (DefaultScore) canvas.renderAndScore(data, improver.getPolygonIndex(), improver.getParentGenerationMember(), improver.getChangedArea(),
+                        improver.getChangedIndex(), candidateFeedback, generationHandler.getEliteCutOff());
+                if (score == null) {
+                    continue;
+                }
+                fullRenderer.render(expected, data);
+                DefaultScore expectedScore = (DefaultScore) feedback.calculateScore(expected, null, null);
+
+                assertSamePixels(type.name() + " image " + i, expected, canvas.getImage());
+                Assert.assertEquals(type.name() + " score " + i, expectedScore.getDelta(), score.getDelta());
+                Assert.assertArrayEquals(type.name(), expectedScore.nodeScores, score.nodeScores);
+
+                generationHandler.addPolygonData(score, data.toArray(new PolygonData[data.size()]));
+            }
+            return canvas.getScreen();
+        } finally {
+            canvas.dispose();
+            fullRenderer.dispose();
+        }
+    }
+
+    private LayerCache assertMatchesFullRender() {
+        CandidateCanvas canvas = new CandidateCanvas(settings, SIZE);
+        Renderer fullRenderer = new ScanlineRenderer();
+        BufferedImage expected = settings.getPixelLayout().createImage(SIZE);
+        try {
+            Improver improver = new Improver(settings, generationHandler, SIZE);
+            for (int i = 0; i < 500; i++) {
+                ImprovementType type = improver.improveRandomly();
+                List<PolygonData> data = improver.getData();
+                canvas.render(data, improver.getPolygonIndex(), improver.getParentGenerationMember(), improver.getChangedArea(), improver.getChangedIndex());
+                fullRenderer.render(expected, data);
+
+                assertSamePixels(type.name() + " image " + i, expected, canvas.getImage());
+            }
+            return canvas.getLayerCache();
+        } finally {
+            canvas.dispose();
+            fullRenderer.dispose();
+        }
+    }
+
+    private static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual) {
+        Object expectedPixels = PixelLayout.getPixels(expected);
+        if (expectedPixels instanceof int[]) {
+            Assert.assertArrayEquals(message, (int[]) expectedPixels, (int[]) PixelLayout.getPixels(actual));
+        } else {
+            Assert.assertArrayEquals(message, (byte[]) expectedPixels, (byte[]) PixelLayout.getPixels(actual));
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.mebigfatguy.polycasso;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -202,6 +206,179 @@ public class DefaultFeedbackTest {
         }
     }
 
+    @Test
+    public void testIntRGBScoresMatchByteABGR() {
+        Random r = new Random(77L);
+        Dimension size = new Dimension(37, 29);
+        BufferedImage byteTarget = PixelLayout.ByteABGR.createImage(size);
+        BufferedImage intTarget = PixelLayout.IntRGB.createImage(size);
+        BufferedImage byteTest = PixelLayout.ByteABGR.createImage(size);
+        BufferedImage intTest = PixelLayout.IntRGB.createImage(size);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                int target = r.nextInt(0x1000000);
+                int test = r.nextInt(0x1000000);
+                byteTarget.setRGB(x, y, target | 0xFF000000);
+                intTarget.setRGB(x, y, target);
+                byteTest.setRGB(x, y, test | 0xFF000000);
+                intTest.setRGB(x, y, test);
+            }
+        }
+
+        Feedback byteFeedback = new DefaultFeedback();
+        byteFeedback.setTargetImage(byteTarget);
+        Feedback intFeedback = new DefaultFeedback();
+        intFeedback.setTargetImage(intTarget);
+
+        Score byteScore = byteFeedback.calculateScore(byteTest, null, null);
+        Score intScore = intFeedback.calculateScore(intTest, null, null);
+        Assert.assertTrue(byteScore.getDelta() > 0);
+        Assert.assertEquals(byteScore.getDelta(), intScore.getDelta());
+
+        Rectangle changedArea = new Rectangle(3, 5, 10, 4);
+        intTest.setRGB(4, 6, 0x123456);
+        byteTest.setRGB(4, 6, 0xFF123456);
+        Assert.assertEquals(byteFeedback.calculateScore(byteTest, byteScore, changedArea).getDelta(),
+                intFeedback.calculateScore(intTest, intScore, changedArea).getDelta());
+    }
+
+    @Test
+    public void testBoundRejectsOnlyWorseImages() {
+        Random r = new Random(19L);
+        Dimension size = new Dimension(150, 110);
+        BufferedImage target = PixelLayout.IntRGB.createImage(size);
+        BufferedImage parent = PixelLayout.IntRGB.createImage(size);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                target.setRGB(x, y, r.nextInt(0x1000000));
+                parent.setRGB(x, y, r.nextInt(0x1000000));
+            }
+        }
+
+        Feedback feedback = new DefaultFeedback();
+        feedback.setTargetImage(target);
+        Score parentScore = feedback.calculateScore(parent, null, null);
+
+        BufferedImage test = PixelLayout.IntRGB.createImage(size);
+        CandidateCanvas.copyAll(parent, test);
+        Rectangle changedArea = new Rectangle(20, 30, 90, 60);
+        for (int y = changedArea.y; y < (changedArea.y + changedArea.height); y++) {
+            for (int x = changedArea.x; x < (changedArea.x + changedArea.width); x++) {
+                test.setRGB(x, y, r.nextInt(0x1000000));
+            }
+        }
+
+        long delta = feedback.calculateScore(test, parent, parentScore, changedArea, Double.MAX_VALUE).getDelta();
+        Assert.assertEquals(feedback.calculateScore(test, null, null).getDelta(), delta);
+        Assert.assertEquals(delta, feedback.calculateScore(test, parent, parentScore, changedArea, delta + 1.0).getDelta());
+        Assert.assertNull(feedback.calculateScore(test, parent, parentScore, changedArea, delta));
+        Assert.assertNull(feedback.calculateScore(test, parent, parentScore, changedArea, delta / 2.0));
+        Assert.assertEquals(delta, feedback.calculateScore(test, null, parentScore, changedArea, delta + 1.0).getDelta());
+        Assert.assertNull(feedback.calculateScore(test, null, parentScore, changedArea, delta / 2.0));
+    }
+
+    @Test
+    public void testScratchScoreIsCopiedWhenFrozen() {
+        BufferedImage sampleImage = buildSampleImage();
+        Score previousScore = feedBack.calculateScore(sampleImage, null, null);
+        Rectangle changedArea = new Rectangle(10, 10, 20, 20);
+        Graphics g = sampleImage.getGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(changedArea.x, changedArea.y, changedArea.width, changedArea.height);
+        g.dispose();
+
+        Score score = feedBack.calculateScore(sampleImage, null, previousScore, changedArea, Double.MAX_VALUE);
+        Score frozenScore = score.freeze();
+        Assert.assertNotSame(score, frozenScore);
+        Assert.assertSame(frozenScore, frozenScore.freeze());
+        Assert.assertSame(previousScore, previousScore.freeze());
+
+        long delta = score.getDelta();
+        Assert.assertSame(score, feedBack.calculateScore(sampleImage, null, frozenScore, new Rectangle(0, 0, 5, 5), Double.MAX_VALUE));
+        Assert.assertEquals(delta, frozenScore.getDelta());
+    }
+
+    @Test
+    public void testPickCellFollowsError() {
+        Random r = new Random(3L);
+        DefaultScore score = new DefaultScore(2);
+        Assert.assertEquals(-1, score.pickCell(r));
+
+        score.setCellScore(1, 2, 300L);
+        score.setCellScore(3, 0, 100L);
+        int[] picks = new int[16];
+        for (int i = 0; i < 4000; i++) {
+            picks[score.pickCell(r)]++;
+        }
+
+        Assert.assertEquals(4000, picks[(2 * 4) + 1] + picks[3]);
+        Assert.assertEquals(3.0, (double) picks[(2 * 4) + 1] / picks[3], 0.4);
+    }
+
+    @Test
+    public void testMeanColorMatchesCoveredPixels() {
+        Random r = new Random(5L);
+        Dimension size = new Dimension(61, 47);
+        BufferedImage target = PixelLayout.ByteABGR.createImage(size);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                target.setRGB(x, y, r.nextInt() | 0xFF000000);
+            }
+        }
+
+        DefaultFeedback feedback = new DefaultFeedback();
+        feedback.setTargetImage(target);
+        Polygon polygon = new Polygon(new int[] { 3, 50, 70, 12 }, new int[] { -5, 8, 40, 30 }, 4);
+        BufferedImage mask = PixelLayout.IntRGB.createImage(size);
+        new ScanlineRenderer().render(mask, Collections.singletonList(new PolygonData(Color.WHITE, 1.0f, polygon)));
+
+        long red = 0, green = 0, blue = 0, pixels = 0;
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                if (mask.getRGB(x, y) != 0xFF000000) {
+                    Color color = new Color(target.getRGB(x, y));
+                    red += color.getRed();
+                    green += color.getGreen();
+                    blue += color.getBlue();
+                    pixels++;
+                }
+            }
+        }
+
+        Color mean = feedback.getSummedAreaTable().getMeanColor(polygon);
+        Assert.assertEquals(Math.round((double) red / pixels), mean.getRed());
+        Assert.assertEquals(Math.round((double) green / pixels), mean.getGreen());
+        Assert.assertEquals(Math.round((double) blue / pixels), mean.getBlue());
+    }
+
+    @Test
+    public void testScoreKernelMatchesScalar() {
+        Random r = new Random(31L);
+        byte[] targetBytes = new byte[4 * 301];
+        byte[] testBytes = new byte[targetBytes.length];
+        r.nextBytes(targetBytes);
+        r.nextBytes(testBytes);
+        int[] targetPixels = new int[301];
+        int[] testPixels = new int[targetPixels.length];
+        for (int i = 0; i < targetPixels.length; i++) {
+            targetPixels[i] = r.nextInt();
+            testPixels[i] = r.nextInt();
+        }
+
+        ScoreKernel scalar = new ScoreKernel();
+        ScoreKernel kernel = ScoreKernel.getInstance();
+        if (Boolean.getBoolean("polycasso.expectVectorKernel")) {
+            // the java 17 test run must compare the vector kernel, not fall back to comparing the scalar one with itself
+            Assert.assertEquals("com.mebigfatguy.polycasso.VectorScoreKernel", kernel.getClass().getName());
+        }
+        for (int i = 0; i < 200; i++) {
+            int start = r.nextInt(targetPixels.length);
+            int end = start + r.nextInt((targetPixels.length - start) + 1);
+            Assert.assertEquals(kernel.toString(), scalar.error(targetPixels, testPixels, start, end), kernel.error(targetPixels, testPixels, start, end));
+            Assert.assertEquals(kernel.toString(), scalar.error(targetBytes, testBytes, start * 4, end * 4),
+                    kernel.error(targetBytes, testBytes, start * 4, end * 4));
+        }
+    }
 
     private BufferedImage buildSampleImage() {
         BufferedImage sample = new BufferedImage(16, 16, BufferedImage.TYPE_4BYTE_ABGR);
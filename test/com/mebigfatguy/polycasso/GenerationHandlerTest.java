@@ -0,0 +1,144 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenerationHandlerTest {
+
+    @Test
+    public void testConcurrentAddsKeepTheGenerationInOrder() throws InterruptedException {
+        final Settings settings = new Settings();
+        final GenerationHandler generationHandler = new GenerationHandler(settings, new Dimension(100, 100));
+        final AtomicLong lowest = new AtomicLong(Long.MAX_VALUE);
+
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; t++) {
+            final long seed = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < 5000; i++) {
+                        long delta = r.nextInt(100000000);
+                        generationHandler.addPolygonData(new DefaultScore(delta), new PolygonData[0]);
+                        long low = lowest.get();
+                        while ((delta < low) && !lowest.compareAndSet(low, delta)) {
+                            low = lowest.get();
+                        }
+                        generationHandler.getRandomMember(false, r);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertEquals(lowest.get(), generationHandler.getBestMember().getScore().getDelta());
+        GenerationMember[] members = generationHandler.getMembers();
+        Assert.assertTrue(members.length < (settings.getGenerationSize() + workers.length));
+        Assert.assertEquals(lowest.get(), members[0].getScore().getDelta());
+        for (int i = 1; i < members.length; i++) {
+            Assert.assertTrue(members[i - 1].compareTo(members[i]) <= 0);
+        }
+    }
+
+    @Test
+    public void testBatchIsMergedInOrder() {
+        Settings settings = new Settings();
+        GenerationHandler generationHandler = new GenerationHandler(settings, new Dimension(100, 100));
+        generationHandler.addPolygonData(new DefaultScore(500L), new PolygonData[0]);
+        generationHandler.addPolygonData(new DefaultScore(300L), new PolygonData[0]);
+
+        List<GenerationMember> batch = new ArrayList<>();
+        batch.add(new GenerationMember(new DefaultScore(400L), new PolygonData[0]));
+        batch.add(new GenerationMember(new DefaultScore(100L), new PolygonData[0]));
+        batch.add(new GenerationMember(new DefaultScore(600L), new PolygonData[0]));
+        Assert.assertEquals(ImprovementResult.BEST, generationHandler.addPolygonData(batch));
+
+        GenerationMember[] members = generationHandler.getMembers();
+        long[] expected = { 100L, 300L, 400L, 500L, 600L };
+        Assert.assertEquals(expected.length, members.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], members[i].getScore().getDelta());
+        }
+        Assert.assertEquals(100L, generationHandler.getBestMember().getScore().getDelta());
+    }
+
+    @Test
+    public void testMembersAtTheScoreBoundDontSurviveTheTurnover() {
+        Settings settings = new Settings();
+        GenerationHandler generationHandler = new GenerationHandler(settings, new Dimension(10, 10), null, new Random(3L));
+        Assert.assertEquals(Double.MAX_VALUE, generationHandler.getScoreBound(), 0.0);
+
+        for (int i = 0; i < settings.getGenerationSize(); i++) {
+            generationHandler.addPolygonData(new DefaultScore(1000L + (i * 100L)), new PolygonData[0]);
+        }
+        Assert.assertEquals(1, generationHandler.getGenerationNumber());
+        double bound = generationHandler.getScoreBound();
+        Assert.assertTrue(bound > generationHandler.getEliteCutOff());
+
+        // the rest of the generation scores at or beyond the bound, and annealing may not swap any of it in
+        long worse = (long) Math.ceil(bound);
+        while (generationHandler.getGenerationNumber() == 1) {
+            generationHandler.addPolygonData(new DefaultScore(worse++), new PolygonData[0]);
+        }
+        for (GenerationMember member : generationHandler.getMembers()) {
+            Assert.assertTrue(member.getScore().getDelta() < bound);
+        }
+    }
+
+    @Test
+    public void testTurnoverOnAnExecutorKeepsLaterMembers() {
+        Settings settings = new Settings();
+        final List<Runnable> turnovers = new ArrayList<>();
+        GenerationHandler generationHandler = new GenerationHandler(settings, new Dimension(100, 100), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                turnovers.add(command);
+            }
+        }, new Random(1L));
+
+        for (int i = 0; i < settings.getGenerationSize(); i++) {
+            generationHandler.addPolygonData(new DefaultScore(1000L + i), new PolygonData[0]);
+        }
+        Assert.assertEquals(1, turnovers.size());
+
+        // members added while the turnover waits are held back, rather than growing the full generation
+        Assert.assertEquals(ImprovementResult.BEST, generationHandler.addPolygonData(new DefaultScore(5L), new PolygonData[0]));
+        Assert.assertEquals(1, turnovers.size());
+        Assert.assertEquals(settings.getGenerationSize(), generationHandler.getMembers().length);
+
+        turnovers.get(0).run();
+        GenerationMember[] members = generationHandler.getMembers();
+        Assert.assertEquals(settings.getEliteSize() + 1, members.length);
+        Assert.assertEquals(5L, members[0].getScore().getDelta());
+        Assert.assertEquals(1, generationHandler.getGenerationNumber());
+    }
+}
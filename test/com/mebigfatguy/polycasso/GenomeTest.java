@@ -0,0 +1,71 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenomeTest {
+
+    @Test
+    public void testCopiesChangeWithoutChangingTheirParent() {
+        Random r = new Random(5L);
+        Dimension size = new Dimension(100, 100);
+        List<PolygonData> expected = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            expected.add(PolygonData.randomPoly(r, size, 4, null));
+        }
+        Genome parent = new Genome(expected.toArray(new PolygonData[expected.size()])).freeze();
+
+        for (int i = 0; i < 200; i++) {
+            Genome child = new Genome(parent);
+            List<PolygonData> childExpected = new ArrayList<>(expected);
+            for (int m = 0; m < 5; m++) {
+                int op = r.nextInt(3);
+                if ((op == 0) || childExpected.isEmpty()) {
+                    int idx = r.nextInt(childExpected.size() + 1);
+                    PolygonData pd = PolygonData.randomPoly(r, size, 4, null);
+                    child.add(idx, pd);
+                    childExpected.add(idx, pd);
+                } else if (op == 1) {
+                    int idx = r.nextInt(childExpected.size());
+                    Assert.assertSame(childExpected.remove(idx), child.remove(idx));
+                } else {
+                    int idx = r.nextInt(childExpected.size());
+                    PolygonData pd = PolygonData.randomPoly(r, size, 4, null);
+                    child.set(idx, pd);
+                    childExpected.set(idx, pd);
+                }
+            }
+
+            Assert.assertEquals(childExpected, child);
+            Assert.assertEquals(expected, parent);
+
+            if (r.nextBoolean()) {
+                parent = child.freeze();
+                expected = childExpected;
+            }
+        }
+    }
+}
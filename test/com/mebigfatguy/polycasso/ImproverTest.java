@@ -0,0 +1,137 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ImproverTest {
+
+    @Test
+    public void testGenomeHashMatchesRecomputedHash() {
+        Random r = new Random(11L);
+        Dimension size = new Dimension(200, 150);
+        Settings settings = new Settings();
+        GenerationHandler generationHandler = new GenerationHandler(settings, size);
+        for (int i = 0; i < settings.getEliteSize(); i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            for (int p = 0; p < 10; p++) {
+                polygons.add(PolygonData.randomPoly(r, size, settings.getMaxPoints(), null));
+            }
+            generationHandler.addPolygonData(new DefaultScore((long) r.nextInt(1000000)), polygons.toArray(new PolygonData[polygons.size()]));
+        }
+
+        Improver improver = new Improver(settings, generationHandler, size);
+        for (int i = 0; i < 2000; i++) {
+            ImprovementType type = improver.improveRandomly();
+            MutatedGenome data = improver.getData();
+            Assert.assertEquals(type.name(), GenomeHash.of(data), improver.getGenomeHash());
+            Assert.assertEquals(type.name(), data, data.materialize());
+
+            if (r.nextInt(4) == 0) {
+                generationHandler.addPolygonData(new DefaultScore((long) r.nextInt(1000000)), data.toArray(new PolygonData[data.size()]));
+                Assert.assertNotNull(generationHandler.getScoreCache().get(improver.getGenomeHash()));
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedRepeatsTheRun() {
+        Assert.assertEquals(runSeeded(42L), runSeeded(42L));
+    }
+
+    private static List<Long> runSeeded(long seed) {
+        Dimension size = new Dimension(200, 150);
+        Settings settings = new Settings();
+        settings.setRandomSeed(seed);
+        SeededRandom random = SeededRandom.create(seed);
+        GenerationHandler generationHandler = new GenerationHandler(settings, size, null, random.split());
+        for (int i = 0; i < settings.getEliteSize(); i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            for (int p = 0; p < 10; p++) {
+                polygons.add(PolygonData.randomPoly(random, size, settings.getMaxPoints(), null));
+            }
+            generationHandler.addPolygonData(new DefaultScore((long) random.nextInt(1000000)), polygons.toArray(new PolygonData[polygons.size()]));
+        }
+
+        Improver improver = new Improver(settings, generationHandler, size, null, null, random.split());
+        List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ImprovementType type = improver.improveRandomly();
+            long hash = improver.getGenomeHash();
+            hashes.add(Long.valueOf(hash));
+            ImprovementResult result = generationHandler.addPolygonData(new DefaultScore(hash & 0xFFFFFL), improver.getData());
+            improver.typeWasSuccessful(type, result != ImprovementResult.FAIL);
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testResidualSamplerPicksWhereTheErrorIs() throws InterruptedException {
+        Dimension size = new Dimension(40, 30);
+        BufferedImage target = PixelLayout.IntRGB.createImage(size);
+        BufferedImage best = PixelLayout.IntRGB.createImage(size);
+        best.setRGB(21, 9, 0xFFFFFF);
+        best.setRGB(33, 25, 0x808080);
+
+        ResidualSampler sampler = new ResidualSampler(target);
+        Random r = new Random(2L);
+        Assert.assertNull(sampler.samplePoint(r));
+        sampler.offer(best);
+        for (int wait = 0; (wait < 100) && (sampler.samplePoint(r) == null); wait++) {
+            Thread.sleep(20);
+        }
+
+        int nearFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            Point p = sampler.samplePoint(r);
+            boolean inFirst = ((p.x / 4) == (21 / 4)) && ((p.y / 4) == (9 / 4));
+            boolean inSecond = ((p.x / 4) == (33 / 4)) && ((p.y / 4) == (25 / 4));
+            Assert.assertTrue(p.toString(), inFirst || inSecond);
+            nearFirst += inFirst ? 1 : 0;
+        }
+        Assert.assertTrue(nearFirst > 700);
+        Assert.assertTrue(sampler.getResidual(21, 9) > sampler.getResidual(33, 25));
+        Assert.assertEquals(0L, sampler.getResidual(0, 0));
+    }
+
+    @Test
+    public void testUnchangedPolygonsHashTheSame() {
+        Random r = new Random(31L);
+        Dimension size = new Dimension(200, 150);
+        List<PolygonData> polygons = new ArrayList<>();
+        for (int p = 0; p < 5; p++) {
+            polygons.add(PolygonData.randomPoly(r, size, 6, null));
+        }
+        long hash = GenomeHash.of(polygons);
+
+        polygons.set(2, polygons.get(2).clone());
+        Assert.assertEquals(hash, GenomeHash.of(polygons));
+
+        polygons.add(0, polygons.remove(4));
+        Assert.assertTrue(hash != GenomeHash.of(polygons));
+    }
+}
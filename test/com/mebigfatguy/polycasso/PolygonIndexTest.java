@@ -0,0 +1,118 @@
+/*
+ * polycasso - Cubism Artwork generator
+ * Copyright 2009-2019 MeBigFatGuy.com
+ * Copyright 2009-2019 Dave Brosius
+ * Inspired by work by Roger Alsing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.polycasso;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PolygonIndexTest {
+
+    private static final Dimension SIZE = new Dimension(100, 75);
+
+    private Settings settings;
+    private GenerationHandler generationHandler;
+
+    @Before
+    public void setup() {
+        settings = new Settings();
+        generationHandler = new GenerationHandler(settings, SIZE);
+
+        Random r = new Random(17L);
+        for (int i = 0; i < settings.getEliteSize(); i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            for (int p = 0; p < 30; p++) {
+                polygons.add(PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null));
+            }
+            generationHandler.addPolygonData(new DefaultScore(1000L + i), polygons.toArray(new PolygonData[polygons.size()]));
+        }
+    }
+
+    @Test
+    public void testIndexFollowsMutations() {
+        Random r = new Random(19L);
+        Improver improver = new Improver(settings, generationHandler, SIZE);
+        for (int i = 0; i < 1000; i++) {
+            ImprovementType type = improver.improveRandomly();
+            List<PolygonData> data = improver.getData();
+            PolygonIndex index = improver.getPolygonIndex();
+            Assert.assertEquals(type.name(), data.size(), index.size());
+
+            Rectangle area = new Rectangle(r.nextInt(SIZE.width), r.nextInt(SIZE.height), r.nextInt(SIZE.width / 2) + 1, r.nextInt(SIZE.height / 2) + 1);
+            int fromIndex = r.nextInt(data.size() + 1);
+            assertQueryMatchesScan(type.name(), data, index, area, fromIndex);
+            assertQueryMatchesScan(type.name(), data, index, new Rectangle(SIZE), 0);
+
+            if ((i % 6) == 0) {
+                generationHandler.addPolygonData(new DefaultScore(900L - i), data.toArray(new PolygonData[data.size()]));
+            } else if ((i % 6) == 3) {
+                generationHandler.addPolygonData(new DefaultScore(900L - i), improver.getData(), index);
+            }
+        }
+
+        // members that kept their candidate's index must not have seen it changed by later improvements
+        for (GenerationMember member : generationHandler.getMembers()) {
+            if (member.getPolygonIndex() != null) {
+                assertQueryMatchesScan("member", member.getGenome(), member.getPolygonIndex(), new Rectangle(SIZE), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCopyDoesNotChangeParent() {
+        Random r = new Random(23L);
+        List<PolygonData> polygons = new ArrayList<>();
+        for (int p = 0; p < 30; p++) {
+            polygons.add(PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null));
+        }
+        PolygonIndex parent = new PolygonIndex(SIZE, polygons);
+
+        PolygonIndex child = new PolygonIndex(parent);
+        child.remove(3);
+        child.set(10, PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null).getPolygon());
+        child.add(PolygonData.randomPoly(r, SIZE, settings.getMaxPoints(), null).getPolygon());
+
+        assertQueryMatchesScan("parent", polygons, parent, new Rectangle(SIZE), 0);
+        assertQueryMatchesScan("parent", polygons, parent, new Rectangle(20, 20, 30, 10), 5);
+    }
+
+    private static void assertQueryMatchesScan(String message, List<PolygonData> data, PolygonIndex index, Rectangle area, int fromIndex) {
+        int[] expected = new int[data.size()];
+        int numExpected = 0;
+        for (int p = fromIndex; p < data.size(); p++) {
+            Rectangle bounds = data.get(p).getPolygon().getBounds();
+            if (!bounds.isEmpty() && bounds.intersects(area)) {
+                expected[numExpected++] = p;
+            }
+        }
+
+        int[] found = new int[data.size()];
+        int numFound = index.query(area, fromIndex, found);
+        Assert.assertEquals(message, numExpected, numFound);
+        for (int i = 0; i < numFound; i++) {
+            Assert.assertEquals(message, expected[i], found[i]);
+        }
+    }
+}
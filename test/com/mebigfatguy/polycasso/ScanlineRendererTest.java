@@ -0,0 +1,173 @@
+package com.mebigfatguy.polycasso;
+
+import java.awt.Color;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * tests that the scanline renderer draws the same pixels as Java2D
+ */
+public class ScanlineRendererTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void testMatchesJava2DForRandomPolygons() {
+        Random r = new Random(20091224L);
+        for (int i = 0; i < 200; i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            int numPolys = r.nextInt(8) + 1;
+            for (int p = 0; p < numPolys; p++) {
+                polygons.add(buildPolygon(r, (p % 3) == 0));
+            }
+
+            assertSameAsJava2D(polygons);
+        }
+    }
+
+    @Test
+    public void testMatchesJava2DForIntRGB() {
+        Random r = new Random(20100101L);
+        for (int i = 0; i < 200; i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            int numPolys = r.nextInt(8) + 1;
+            for (int p = 0; p < numPolys; p++) {
+                polygons.add(buildPolygon(r, (p % 3) == 0));
+            }
+
+            BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Renderer java2D = new Java2DRenderer();
+            Renderer scanline = new ScanlineRenderer();
+            try {
+                java2D.render(expected, polygons);
+                scanline.render(actual, polygons);
+                Rectangle clip = new Rectangle(r.nextInt(WIDTH), r.nextInt(HEIGHT), r.nextInt(WIDTH / 2) + 1, r.nextInt(HEIGHT / 2) + 1);
+                java2D.render(expected, polygons.subList(0, 1), clip);
+                scanline.render(actual, polygons.subList(0, 1), clip);
+            } finally {
+                java2D.dispose();
+                scanline.dispose();
+            }
+
+            int[] expectedPixels = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+            int[] actualPixels = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+            for (int p = 0; p < expectedPixels.length; p++) {
+                Assert.assertEquals(polygons.toString(), expectedPixels[p] & 0x00FFFFFF, actualPixels[p]);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesJava2DForAlphasOnARoundingBoundary() {
+        List<PolygonData> polygons = new ArrayList<>();
+        polygons.add(new PolygonData(Color.WHITE, 1.0f, new Polygon(new int[] { 0, 64, 64, 0 }, new int[] { 0, 0, 48, 48 }, 4)));
+        polygons.add(new PolygonData(Color.BLACK, 0.62941176f, new Polygon(new int[] { 0, 40, 10 }, new int[] { 0, 5, 40 }, 3)));
+        polygons.add(new PolygonData(new Color(40, 160, 90), 0.7392157f, new Polygon(new int[] { 20, 60, 50 }, new int[] { 10, 8, 45 }, 3)));
+
+        assertSameAsJava2D(polygons);
+    }
+
+    @Test
+    public void testMatchesJava2DForDegeneratePolygons() {
+        List<PolygonData> polygons = new ArrayList<>();
+        polygons.add(new PolygonData(Color.RED, 1.0f, new Polygon(new int[] { 5, 30, 60 }, new int[] { 10, 10, 10 }, 3)));
+        polygons.add(new PolygonData(Color.GREEN, 0.5f, new Polygon(new int[] { 5, 5, 5 }, new int[] { 0, 20, 40 }, 3)));
+        polygons.add(new PolygonData(Color.BLUE, 0.0f, new Polygon(new int[] { 0, 60, 30 }, new int[] { 0, 0, 40 }, 3)));
+        polygons.add(new PolygonData(Color.WHITE, 0.75f, new Polygon(new int[] { -20, 100, -20 }, new int[] { -20, 24, 80 }, 3)));
+
+        assertSameAsJava2D(polygons);
+    }
+
+    @Test
+    public void testClippedRenderMatchesJava2D() {
+        Random r = new Random(1234L);
+        for (int i = 0; i < 100; i++) {
+            List<PolygonData> polygons = new ArrayList<>();
+            int numPolys = r.nextInt(8) + 1;
+            for (int p = 0; p < numPolys; p++) {
+                polygons.add(buildPolygon(r, (p % 3) == 0));
+            }
+            Rectangle clip = new Rectangle(r.nextInt(WIDTH) - 4, r.nextInt(HEIGHT) - 4, r.nextInt(WIDTH / 2) + 1, r.nextInt(HEIGHT / 2) + 1);
+
+            BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+            BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+            Renderer java2D = new Java2DRenderer();
+            Renderer scanline = new ScanlineRenderer();
+            try {
+                List<PolygonData> background = new ArrayList<>();
+                background.add(buildPolygon(r, true));
+                java2D.render(expected, background);
+                scanline.render(actual, background);
+
+                java2D.render(expected, polygons, clip);
+                scanline.render(actual, polygons, clip);
+            } finally {
+                java2D.dispose();
+                scanline.dispose();
+            }
+
+            Assert.assertArrayEquals(clip + " " + polygons, ((DataBufferByte) expected.getRaster().getDataBuffer()).getData(),
+                    ((DataBufferByte) actual.getRaster().getDataBuffer()).getData());
+        }
+    }
+
+    @Test
+    public void testVerifyingRendererCountsNoMismatches() {
+        Random r = new Random(42L);
+        VerifyingRenderer renderer = new VerifyingRenderer();
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        try {
+            for (int i = 0; i < 20; i++) {
+                List<PolygonData> polygons = new ArrayList<>();
+                polygons.add(buildPolygon(r, false));
+                polygons.add(buildPolygon(r, true));
+                renderer.render(image, polygons);
+            }
+        } finally {
+            renderer.dispose();
+        }
+
+        Assert.assertEquals(20L, renderer.getImagesRendered());
+        Assert.assertEquals(0L, renderer.getMismatchedPixels());
+    }
+
+    private void assertSameAsJava2D(List<PolygonData> polygons) {
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+
+        Renderer java2D = new Java2DRenderer();
+        Renderer scanline = new ScanlineRenderer();
+        try {
+            java2D.render(expected, polygons);
+            scanline.render(actual, polygons);
+        } finally {
+            java2D.dispose();
+            scanline.dispose();
+        }
+
+        Assert.assertArrayEquals(polygons.toString(), ((DataBufferByte) expected.getRaster().getDataBuffer()).getData(),
+                ((DataBufferByte) actual.getRaster().getDataBuffer()).getData());
+    }
+
+    private PolygonData buildPolygon(Random r, boolean opaque) {
+        Polygon polygon = new Polygon();
+        int numPoints = r.nextInt(6) + 3;
+        for (int i = 0; i < numPoints; i++) {
+            polygon.addPoint(r.nextInt(WIDTH + 10) - 5, r.nextInt(HEIGHT + 10) - 5);
+        }
+
+        Color c = new Color(r.nextInt(256), r.nextInt(256), r.nextInt(256));
+        return new PolygonData(c, opaque ? 1.0f : r.nextFloat(), polygon);
+    }
+}